@@ -0,0 +1,48 @@
+package sps_p;
+
+import org.openjdk.jmh.annotations.*;
+import sps_p.utils.Combination;
+import sps_p.utils.Permutation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure generating all combinations nC3, which are the triangles of the Heider balance, and all permutations kPk.
+ * Every element is visited, so the cost doesn't depend on whether elements are stored or generated lazily.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CombinatoricsBenchmark {
+    @State(Scope.Benchmark)
+    public static class Triangles {
+        @Param({"50", "200"})
+        int n;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Orders {
+        @Param({"3", "8"})
+        int k;
+    }
+
+    @Benchmark
+    public long combination(Triangles triangles) {
+        long sum = 0;
+        for (int[] c : new Combination(triangles.n, 3)) {
+            sum += c[2];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long permutation(Orders orders) {
+        long sum = 0;
+        for (int[] p : new Permutation(orders.k, orders.k)) {
+            sum += p[0];
+        }
+        return sum;
+    }
+}
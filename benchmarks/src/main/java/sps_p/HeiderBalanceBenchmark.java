@@ -0,0 +1,43 @@
+package sps_p;
+
+import org.openjdk.jmh.annotations.*;
+import sps_p.metrics.KanoKBalanceMetrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the Heider balance of all triangles of particles in BigDecimal and in double.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeiderBalanceBenchmark {
+    @Param({"20", "50", "1000"})
+    int num;
+
+    private double[][] params = {
+            {0.8, -0.2},
+            {1.4, 0.4}
+    };
+
+    private KanoKBalanceMetrics metrics;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        metrics = (KanoKBalanceMetrics) KanoKBalanceMetrics.getInstance();
+    }
+
+    @Benchmark
+    public BigDecimal allTriangles() {
+        return metrics.calcHeiderBalanceBasedOnAllTriangle(params, num, 2);
+    }
+
+    @Benchmark
+    public double allTrianglesInDouble() {
+        return metrics.calcHeiderBalanceInDouble(params, num, 2);
+    }
+}
@@ -0,0 +1,62 @@
+package sps_p;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the scalar kernel with VectorForceKernel, which calculates the same pairs with vectors, and both of them in
+ * float.
+ * VectorForceKernel is in the jar only when the parent is installed with "-Pvector", and the scalar kernel is measured
+ * twice without it. The fork adds the incubator module of the Vector API, so this needs JDK 16 or later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KernelBenchmark {
+    /**
+     * A fixed seed, so every run of this benchmark calculates the same swarms.
+     */
+    private static final long SEED = 1;
+
+    @Param({"1000", "5000", "20000"})
+    int num;
+
+    @Param({"serial", "vector", "float", "float-vector"})
+    String kernel;
+
+    private ForceKernel forceKernel;
+    private double[] x, y, fx, fy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimulationEngine engine = new SimulationEngine(num, 2, 40, SEED);
+        switch (kernel) {
+            case "vector":
+                forceKernel = Batch.createVectorKernel(engine, false);
+                break;
+            case "float":
+                forceKernel = new FloatForceKernel(engine);
+                break;
+            case "float-vector":
+                forceKernel = Batch.createVectorKernel(engine, true);
+                break;
+            default:
+                forceKernel = new SerialForceKernel(engine);
+        }
+        ParticleStore store = engine.getStore();
+        x = store.x;
+        y = store.y;
+        fx = new double[num];
+        fy = new double[num];
+    }
+
+    @Benchmark
+    public double compute() {
+        forceKernel.compute(x, y, fx, fy);
+        return fx[0];
+    }
+}
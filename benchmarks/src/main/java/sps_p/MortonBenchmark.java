@@ -0,0 +1,71 @@
+package sps_p;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare CellListForceKernel on particles in the order of ids with the same particles sorted by MortonOrder, and
+ * measure the sort itself.
+ * Particles are spread uniformly in a periodic boundary and the cutoff is chosen so that each particle has about 30
+ * neighbors. A running swarm gathers into clusters, which changes the cost of a step, so the positions are fixed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class MortonBenchmark {
+    /**
+     * A fixed seed, so every run of this benchmark calculates the same swarms.
+     */
+    private static final long SEED = 1;
+
+    @Param({"50000", "200000"})
+    int num;
+
+    @Param({"id", "morton"})
+    String order;
+
+    private SimulationEngine engine;
+    private ForceKernel kernel;
+    private MortonOrder morton;
+    private double[] fx, fy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new SimulationEngine(num, 2, 40, SEED);
+        engine.setBoundary(Boundary.PERIODIC);
+        ParticleStore store = engine.getStore();
+        for (int i = 0; i < num; i++) {
+            store.x[i] = engine.getRandom().nextDouble() * SimulationEngine.CYCLE_L;
+            store.y[i] = engine.getRandom().nextDouble() * SimulationEngine.CYCLE_L;
+        }
+        morton = new MortonOrder();
+        if (order.equals("morton")) {
+            morton.sort(store, engine.getParameter().types, Boundary.PERIODIC);
+        }
+        // 30 neighbors in the area of pi * cutoff^2 at the density num / CYCLE_L^2.
+        double cutoff = SimulationEngine.CYCLE_L * Math.sqrt(30 / (Math.PI * num));
+        kernel = new CellListForceKernel(engine, cutoff);
+        fx = new double[num];
+        fy = new double[num];
+    }
+
+    @Benchmark
+    public double compute() {
+        ParticleStore store = engine.getStore();
+        kernel.compute(store.x, store.y, fx, fy);
+        return fx[0];
+    }
+
+    /**
+     * Sort particles which are already sorted, as in a run which sorts them every few steps.
+     */
+    @Benchmark
+    public int sort() {
+        morton.sort(engine.getStore(), engine.getParameter().types, Boundary.PERIODIC);
+        return engine.getStore().ids[0];
+    }
+}
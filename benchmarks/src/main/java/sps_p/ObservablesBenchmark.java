@@ -0,0 +1,44 @@
+package sps_p;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure Observables, which calculates the center of gravity, X, and V every time a viewer or a batch run reads them.
+ * The swarm is moved for 1000 steps first, so particles don't overlap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObservablesBenchmark {
+    /**
+     * A fixed seed, so every run of this benchmark calculates the same swarms.
+     */
+    private static final long SEED = 1;
+
+    @Param({"50", "500", "5000"})
+    int num;
+
+    private Observables observables = new Observables();
+    private ParticleStore store;
+    private Boundary boundary;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimulationEngine engine = new SimulationEngine(num, 2, 40, SEED);
+        engine.setKernel(new CellListForceKernel(engine, 2.0));
+        engine.run(1000);
+        store = engine.getStore();
+        boundary = engine.getBoundary();
+    }
+
+    @Benchmark
+    public double compute() {
+        observables.compute(store, boundary, 0);
+        return observables.x + observables.v;
+    }
+}
@@ -0,0 +1,47 @@
+package sps_p;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure one step of SimulationEngine, which is the calculation of interactions and the movement of all particles.
+ * The engine is reset before each iteration, so every iteration starts from the same kind of swarm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepBenchmark {
+    /**
+     * A fixed seed, so every run of this benchmark calculates the same swarms.
+     */
+    private static final long SEED = 1;
+
+    @Param({"50", "500", "5000"})
+    int num;
+
+    @Param({"OPEN", "PERIODIC"})
+    String boundary;
+
+    private SimulationEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new SimulationEngine(num, 2, 40, SEED);
+        engine.setBoundary(Boundary.valueOf(boundary));
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        engine.reset();
+    }
+
+    @Benchmark
+    public int step() {
+        engine.step();
+        return engine.getCount();
+    }
+}
@@ -0,0 +1,185 @@
+package sps_p;
+
+/**
+ * The Dormand-Prince 5(4) method with step size control.
+ * Each step compares the 5th order solution with the embedded 4th order one, and the time step grows while the
+ * difference is smaller than |tolerance| and shrinks otherwise. A swarm which is almost stable takes large steps.
+ * A rejected step is calculated again with a smaller time step. Interactions are evaluated 7 times for the first trial
+ * and 6 times for each retry, which shares the first stage at the same positions.
+ */
+class AdaptiveIntegrator implements Integrator {
+    private static final int STAGES = 7;
+
+    /**
+     * Butcher tableau of the Dormand-Prince method.
+     */
+    private static final double[][] A = {
+            {},
+            {1.0 / 5},
+            {3.0 / 40, 9.0 / 40},
+            {44.0 / 45, -56.0 / 15, 32.0 / 9},
+            {19372.0 / 6561, -25360.0 / 2187, 64448.0 / 6561, -212.0 / 729},
+            {9017.0 / 3168, -355.0 / 33, 46732.0 / 5247, 49.0 / 176, -5103.0 / 18656},
+            {35.0 / 384, 0, 500.0 / 1113, 125.0 / 192, -2187.0 / 6784, 11.0 / 84},
+    };
+
+    /**
+     * The weights of the 5th order solution. This is the same as the last row of A.
+     */
+    private static final double[] B = {35.0 / 384, 0, 500.0 / 1113, 125.0 / 192, -2187.0 / 6784, 11.0 / 84, 0};
+
+    /**
+     * The difference of weights between the 5th order and the 4th order solutions.
+     */
+    private static final double[] E = {
+            71.0 / 57600, 0, -71.0 / 16695, 71.0 / 1920, -17253.0 / 339200, 22.0 / 525, -1.0 / 40
+    };
+
+    private static final double SAFETY = 0.9;
+    private static final double MIN_FACTOR = 0.2;
+    private static final double MAX_FACTOR = 5.0;
+
+    private double dt;
+    private double minDt;
+    private double maxDt;
+    private double tolerance;
+
+    private int rejected = 0;
+
+    private double[][] kx, ky;
+    private double[] tx, ty;
+
+    /**
+     * @param dt        The first time step.
+     * @param minDt     The smallest time step. A step with this time step is accepted even if the error is large.
+     * @param maxDt     The largest time step.
+     * @param tolerance The allowed error of the position of each particle per step.
+     */
+    AdaptiveIntegrator(double dt, double minDt, double maxDt, double tolerance) {
+        if (!(0 < minDt && minDt <= dt && dt <= maxDt)) {
+            throw new IllegalArgumentException("0 < minDt <= dt <= maxDt is required: " + minDt + ", " + dt + ", " + maxDt);
+        }
+        if (tolerance <= 0) {
+            throw new IllegalArgumentException("tolerance must be positive: " + tolerance);
+        }
+        this.dt = dt;
+        this.minDt = minDt;
+        this.maxDt = maxDt;
+        this.tolerance = tolerance;
+    }
+
+    @Override
+    public double step(ParticleStore store, ForceKernel kernel) {
+        int n = store.num;
+        if (tx == null || tx.length != n) {
+            kx = new double[STAGES][n];
+            ky = new double[STAGES][n];
+            tx = new double[n];
+            ty = new double[n];
+        }
+        double[] x = store.x;
+        double[] y = store.y;
+
+        // The first stage is at the current positions, so rejected trials share it.
+        kernel.compute(x, y, kx[0], ky[0]);
+        while (true) {
+            for (int s = 1; s < STAGES; s++) {
+                for (int i = 0; i < n; i++) {
+                    double sumX = 0, sumY = 0;
+                    for (int j = 0; j < s; j++) {
+                        sumX += A[s][j] * kx[j][i];
+                        sumY += A[s][j] * ky[j][i];
+                    }
+                    tx[i] = x[i] + dt * sumX;
+                    ty[i] = y[i] + dt * sumY;
+                }
+                kernel.compute(tx, ty, kx[s], ky[s]);
+            }
+
+            // The largest difference of a position between the 5th and the 4th order solutions.
+            double error = 0;
+            for (int i = 0; i < n; i++) {
+                double ex = 0, ey = 0;
+                for (int s = 0; s < STAGES; s++) {
+                    ex += E[s] * kx[s][i];
+                    ey += E[s] * ky[s][i];
+                }
+                error = Math.max(error, dt * Math.sqrt(ex * ex + ey * ey));
+            }
+            double ratio = error / tolerance;
+
+            if (Double.isNaN(ratio) || Double.isInfinite(ratio)) {
+                // factor() can't scale by this, so try the smallest time step, where a finite error is accepted.
+                if (dt <= minDt) {
+                    throw new IllegalStateException(
+                            "The error estimate is " + error + " even with the smallest time step " + minDt);
+                }
+                rejected++;
+                dt = minDt;
+                continue;
+            }
+            if (ratio <= 1.0 || dt <= minDt) {
+                // The last stage is at the 5th order solution, so it is the new position.
+                for (int i = 0; i < n; i++) {
+                    double sumX = 0, sumY = 0;
+                    for (int s = 0; s < STAGES; s++) {
+                        sumX += B[s] * kx[s][i];
+                        sumY += B[s] * ky[s][i];
+                    }
+                    store.vx[i] = sumX;
+                    store.vy[i] = sumY;
+                    x[i] += dt * sumX;
+                    y[i] += dt * sumY;
+                }
+                double used = dt;
+                dt = Math.min(maxDt, Math.max(minDt, dt * factor(ratio)));
+                return used;
+            }
+
+            rejected++;
+            dt = Math.max(minDt, dt * factor(ratio));
+        }
+    }
+
+    /**
+     * @return The number of rejected trials since this integrator was created.
+     */
+    int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return The time step which the next step tries first.
+     */
+    double getDt() {
+        return dt;
+    }
+
+    /**
+     * @return {The next time step, The number of rejected trials}.
+     */
+    @Override
+    public double[] getState() {
+        return new double[]{dt, rejected};
+    }
+
+    @Override
+    public void setState(double[] state) {
+        if (state.length != 2) {
+            throw new IllegalArgumentException("AdaptiveIntegrator needs 2 values of state, but got " + state.length);
+        }
+        if (!(minDt <= state[0] && state[0] <= maxDt)) {
+            throw new IllegalArgumentException("The saved time step is out of " + minDt + " to " + maxDt + ": "
+                    + state[0]);
+        }
+        dt = state[0];
+        rejected = (int) state[1];
+    }
+
+    private double factor(double ratio) {
+        if (ratio == 0) {
+            return MAX_FACTOR;
+        }
+        return Math.min(MAX_FACTOR, Math.max(MIN_FACTOR, SAFETY * Math.pow(ratio, -0.2)));
+    }
+}
@@ -0,0 +1,296 @@
+package sps_p;
+
+import java.util.Arrays;
+
+/**
+ * Approximate interactions from distant particles by a Barnes-Hut quadtree in O(N log N).
+ * Each node of the tree keeps the number and the center of gravity of particles for each type, so the asymmetric
+ * parameter kij is still applied per type. Particle i sees a node as particles gathered at the centers of gravity of
+ * each type when width / distance < theta and the node doesn't contain particle i.
+ * theta = 0 calculates all pairs exactly. This kernel supports only an open boundary.
+ * <p>
+ * The tree is stored in arrays which are reused between steps.
+ */
+class BarnesHutForceKernel extends ForceKernel {
+    /**
+     * Particles in the same leaf at this depth are kept in a list instead of dividing the node.
+     */
+    private static final int MAX_DEPTH = 48;
+
+    private double theta;
+
+    private int pType;
+    private int nodes;
+
+    /**
+     * The center and the half of the width of each node.
+     */
+    private double[] centerX = new double[0];
+    private double[] centerY = new double[0];
+    private double[] half = new double[0];
+
+    /**
+     * The first child of each node. The 4 children of a node are next to each other. -1 means a leaf.
+     */
+    private int[] child = new int[0];
+
+    /**
+     * The first particle of each leaf and the next particle in the same leaf. -1 means the end.
+     */
+    private int[] first = new int[0];
+    private int[] next = new int[0];
+
+    /**
+     * The number and the sum of positions of particles for each type in each node. The index is node * pType + type.
+     */
+    private int[] count = new int[0];
+    private double[] sumX = new double[0];
+    private double[] sumY = new double[0];
+
+    /**
+     * The type of each particle, which is shared with Parameter.
+     */
+    private int[] types;
+    private int[] stack = new int[0];
+
+    /**
+     * @param engine The engine which has parameter K and a boundary.
+     * @param theta  The accuracy parameter. The smaller theta is, the more accurate and slower.
+     */
+    BarnesHutForceKernel(SimulationEngine engine, double theta) {
+        super(engine);
+        if (theta < 0) {
+            throw new IllegalArgumentException("theta must not be negative: " + theta);
+        }
+        this.theta = theta;
+    }
+
+    @Override
+    void compute(double[] x, double[] y, double[] fx, double[] fy) {
+        if (engine.getBoundary() != Boundary.OPEN) {
+            throw new IllegalStateException("Barnes-Hut kernel supports only an open boundary");
+        }
+        Parameter parameter = engine.getParameter();
+        double[] flatParams = parameter.flatParams;
+        build(x, y, parameter);
+
+        double theta2 = theta * theta;
+        double eps2 = engine.getSoftening() * engine.getSoftening();
+        int top;
+        int node, base, type, row;
+        double dx, dy, dis2, dis, f, width;
+        double sumFx, sumFy;
+
+        for (int i = 0; i < x.length; i++) {
+            row = types[i] * pType;
+            sumFx = 0.0;
+            sumFy = 0.0;
+            top = 0;
+            stack[top++] = 0;
+
+            while (top > 0) {
+                node = stack[--top];
+                base = node * pType;
+
+                if (child[node] < 0) {
+                    // A leaf. Calculate each particle exactly.
+                    for (int j = first[node]; j >= 0; j = next[j]) {
+                        if (j == i) continue;
+                        dx = x[j] - x[i];
+                        dy = y[j] - y[i];
+                        dis = Math.sqrt(dx * dx + dy * dy + eps2);
+                        f = (flatParams[row + types[j]] / dis - 1.0 / (dis * dis)) / dis;
+                        sumFx += f * dx;
+                        sumFy += f * dy;
+                    }
+                    continue;
+                }
+
+                width = 2 * half[node];
+                int total = 0;
+                double gx = 0, gy = 0;
+                for (type = 0; type < pType; type++) {
+                    total += count[base + type];
+                    gx += sumX[base + type];
+                    gy += sumY[base + type];
+                }
+                dx = gx / total - x[i];
+                dy = gy / total - y[i];
+                dis2 = dx * dx + dy * dy;
+
+                if (width * width < theta2 * dis2 && !contains(node, x[i], y[i])) {
+                    // Far enough. Treat particles of each type as if they were at their center of gravity.
+                    for (type = 0; type < pType; type++) {
+                        int n = count[base + type];
+                        if (n == 0) continue;
+                        dx = sumX[base + type] / n - x[i];
+                        dy = sumY[base + type] / n - y[i];
+                        dis = Math.sqrt(dx * dx + dy * dy + eps2);
+                        f = n * (flatParams[row + type] / dis - 1.0 / (dis * dis)) / dis;
+                        sumFx += f * dx;
+                        sumFy += f * dy;
+                    }
+                } else {
+                    for (int c = child[node]; c < child[node] + 4; c++) {
+                        if (isEmpty(c)) continue;
+                        stack[top++] = c;
+                    }
+                }
+            }
+            fx[i] = sumFx;
+            fy[i] = sumFy;
+        }
+    }
+
+    /**
+     * Compare forces of this kernel with the exact sum of all pairs at the same positions.
+     *
+     * @param x The positions x of particles.
+     * @param y The positions y of particles.
+     * @return {The relative RMS error, The maximum relative error of a particle}.
+     * The relative RMS error is sqrt(Σ|Fi - Fi'|^2 / Σ|Fi'|^2) where Fi' is the exact value.
+     */
+    double[] compareWithExact(double[] x, double[] y) {
+        int n = x.length;
+        double[] fx = new double[n], fy = new double[n];
+        double[] ex = new double[n], ey = new double[n];
+        compute(x, y, fx, fy);
+        new SerialForceKernel(engine).compute(x, y, ex, ey);
+
+        double diff2 = 0, norm2 = 0, max = 0;
+        double d2, e2;
+        for (int i = 0; i < n; i++) {
+            d2 = (fx[i] - ex[i]) * (fx[i] - ex[i]) + (fy[i] - ey[i]) * (fy[i] - ey[i]);
+            e2 = ex[i] * ex[i] + ey[i] * ey[i];
+            diff2 += d2;
+            norm2 += e2;
+            if (e2 > 0) {
+                max = Math.max(max, Math.sqrt(d2 / e2));
+            }
+        }
+        return new double[]{Math.sqrt(diff2 / norm2), max};
+    }
+
+    /**
+     * Build a quadtree which covers all particles.
+     *
+     * @param x         The positions x of particles.
+     * @param y         The positions y of particles.
+     * @param parameter The parameter which knows the type of each particle.
+     */
+    private void build(double[] x, double[] y, Parameter parameter) {
+        int num = x.length;
+        if (pType != parameter.pType) {
+            pType = parameter.pType;
+            count = new int[child.length * pType];
+            sumX = new double[child.length * pType];
+            sumY = new double[child.length * pType];
+        }
+        types = parameter.types;
+        if (next.length != num) {
+            next = new int[num];
+        }
+        if (stack.length < 3 * MAX_DEPTH + 4) {
+            stack = new int[3 * MAX_DEPTH + 4];
+        }
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < num; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+
+        nodes = 0;
+        int root = newNode((minX + maxX) / 2, (minY + maxY) / 2, Math.max(maxX - minX, maxY - minY) / 2 * 1.0001 + 1e-9);
+        for (int i = 0; i < num; i++) {
+            insert(root, i, x, y, 0);
+        }
+    }
+
+    /**
+     * Insert particle i into the node and add it to the counts of all nodes on the way.
+     */
+    private void insert(int node, int i, double[] x, double[] y, int depth) {
+        while (true) {
+            int index = node * pType + types[i];
+            count[index]++;
+            sumX[index] += x[i];
+            sumY[index] += y[i];
+
+            if (child[node] >= 0) {
+                node = child[node] + quadrant(node, x[i], y[i]);
+                depth++;
+                continue;
+            }
+            if (first[node] < 0 || depth >= MAX_DEPTH) {
+                next[i] = first[node];
+                first[node] = i;
+                return;
+            }
+
+            // Divide the leaf and move its particle to a child.
+            int other = first[node];
+            first[node] = -1;
+            double h = half[node] / 2;
+            int c = newNode(centerX[node] - h, centerY[node] - h, h);
+            newNode(centerX[node] + h, centerY[node] - h, h);
+            newNode(centerX[node] - h, centerY[node] + h, h);
+            newNode(centerX[node] + h, centerY[node] + h, h);
+            child[node] = c;
+
+            int moved = c + quadrant(node, x[other], y[other]);
+            int movedIndex = moved * pType + types[other];
+            count[movedIndex]++;
+            sumX[movedIndex] += x[other];
+            sumY[movedIndex] += y[other];
+            next[other] = -1;
+            first[moved] = other;
+
+            node = c + quadrant(node, x[i], y[i]);
+            depth++;
+        }
+    }
+
+    private int quadrant(int node, double px, double py) {
+        return (px < centerX[node] ? 0 : 1) + (py < centerY[node] ? 0 : 2);
+    }
+
+    private boolean contains(int node, double px, double py) {
+        return Math.abs(px - centerX[node]) <= half[node] && Math.abs(py - centerY[node]) <= half[node];
+    }
+
+    private boolean isEmpty(int node) {
+        return child[node] < 0 && first[node] < 0;
+    }
+
+    private int newNode(double cx, double cy, double h) {
+        if (nodes == child.length) {
+            grow();
+        }
+        int node = nodes++;
+        centerX[node] = cx;
+        centerY[node] = cy;
+        half[node] = h;
+        child[node] = -1;
+        first[node] = -1;
+        Arrays.fill(count, node * pType, (node + 1) * pType, 0);
+        Arrays.fill(sumX, node * pType, (node + 1) * pType, 0.0);
+        Arrays.fill(sumY, node * pType, (node + 1) * pType, 0.0);
+        return node;
+    }
+
+    private void grow() {
+        int capacity = Math.max(64, child.length * 2);
+        centerX = Arrays.copyOf(centerX, capacity);
+        centerY = Arrays.copyOf(centerY, capacity);
+        half = Arrays.copyOf(half, capacity);
+        child = Arrays.copyOf(child, capacity);
+        first = Arrays.copyOf(first, capacity);
+        count = Arrays.copyOf(count, capacity * pType);
+        sumX = Arrays.copyOf(sumX, capacity * pType);
+        sumY = Arrays.copyOf(sumY, capacity * pType);
+    }
+}
@@ -0,0 +1,352 @@
+package sps_p;
+
+import sps_p.metrics.TriadBalance;
+import sps_p.utils.Arguments;
+
+import com.sun.management.ThreadMXBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Run a simulation without any window for a fixed number of steps and print X and V as CSV.
+ * <p>
+ * Options:
+ * --num      The number of particles. (default: 50)
+ * --type     The number of type of particles. (default: 2)
+ * --steps    The number of steps. (default: 100000)
+ * --boundary "open" or "periodic". (default: open)
+ * --params   Comma separated parameter K in row-major order. Ex. "0.8,1.7,0.5,1.2" (default: ParameterKabpm)
+ * --types    Comma separated type of each particle. Ex. "0,1,0,1" (default: contiguous groups of types)
+ * --seed     The seed of random numbers, which decides initial positions and random parameter K. The seed is printed
+ *            to stderr, so a run can be repeated by it. (default: random)
+ * --interval Print X and V every this number of steps. (default: 1000)
+ * --threads  The number of threads to calculate interactions. 0 means the common ForkJoinPool. (default: 1)
+ * --cutoff   Ignore interactions beyond this distance and find neighbors by a cell list. (default: none)
+ * --skin     With --cutoff, keep Verlet neighbor lists of pairs closer than cutoff + skin instead, which are rebuilt
+ *            only when a particle moved more than skin / 2. With --report, how often they were rebuilt is also
+ *            printed. (default: none)
+ * --theta    Approximate distant particles by a Barnes-Hut quadtree with this accuracy. Open boundary only.
+ *            With --report, the error compared with the exact calculation is also printed. (default: none)
+ * --vector   Calculate all pairs by the Vector API. This needs the "vector" build and
+ *            "--add-modules jdk.incubator.vector", and the scalar kernel is used without them. Only with all pairs
+ *            on one thread, that is, without --threads, --cutoff and --theta.
+ * --float    Calculate interactions in float with double sums, which is faster but differs from double by a few ULPs
+ *            per pair. Only with all pairs, that is, without --threads, --cutoff and --theta. Can be combined with
+ *            --vector, which is where it is faster. See DriftReport for the difference from double.
+ * --reorder  Sort particles along a Z-order curve every this number of steps, so particles close in space are close
+ *            in memory. This makes --cutoff faster for large N. Outputs are still in the order of ids.
+ *            (default: 0, never)
+ * --softening Replace |Rij| in interactions by sqrt(|Rij|^2 + softening^2), which keeps interactions between close
+ *            particles finite, so a larger --dt doesn't throw them away. (default: 0, no softening)
+ * --init     "random", "lattice", "jittered" or "poisson-disk". "random" puts particles uniformly between center - 1
+ *            and center + 1. The others spread particles about --spacing apart around the center, on a square grid,
+ *            at a random position in each square of the grid, or at random positions at least --spacing apart.
+ *            (default: random)
+ * --spacing  The distance between neighboring particles for --init other than "random". (default: 0.5)
+ * --integrator "euler", "rk4" or "adaptive". (default: euler)
+ * --dt       The time step. The first time step for "adaptive". (default: 0.002)
+ * --tolerance The allowed error of a position per step for "adaptive". (default: 1e-6)
+ * --max-dt   The largest time step for "adaptive". The smallest one is dt / 1000. (default: 100 * dt)
+ * --triads   Also print the number of balanced and imbalanced triads in the step before each line. Particle i likes
+ *            particle j when the distance between them didn't increase in the step.
+ * --early-stop Stop when the swarm settled, which is judged by RegimeDetector every |interval| steps. The regime is
+ *            printed to stderr.
+ * --window   The number of the latest samples of X and V to judge the regime. (default: 20)
+ * --converged-v The swarm is CONVERGED when V in the window is less than this. (default: 1e-5)
+ * --diverged-x  The swarm is DIVERGED when X in the window is less than this. (default: 0.01)
+ * --steady   The swarm is STEADY when the standard deviations of X and V in the window are at most this times their
+ *            means. (default: 1e-3)
+ * --trajectory Record positions into this binary file, which can be read by TrajectoryReader. (default: none)
+ * --stride   Record a frame every this number of steps. (default: 1)
+ * --velocities Also record velocities.
+ * --checkpoint Save the whole state into this file every --checkpoint-interval steps and after all steps.
+ *            (default: none)
+ * --checkpoint-interval Save a checkpoint every this number of steps. (default: 100000)
+ * --resume   Continue from the file of --checkpoint if it exists. The engine must be created with the same options.
+ *            --steps is the total number of steps including the steps before the checkpoint, and the header of CSV
+ *            isn't printed again. A trajectory file is continued from the checkpoint. With --early-stop, the samples
+ *            of the regime are restored, too, so the run stops at the same step as one without a stop.
+ * --report   Print the time and the heap allocation per step to stderr after all steps.
+ */
+class Batch {
+    private SimulationEngine engine;
+    private long steps;
+    private int interval;
+    private boolean report;
+    private BarnesHutForceKernel barnesHut;
+    private RegimeDetector detector;
+    private TrajectoryWriter trajectory;
+    private Path checkpoint;
+    private int checkpointInterval;
+    private boolean resumed = false;
+
+    private TriadBalance triads;
+    private double[] preX;
+    private double[] preY;
+    private double[] newX;
+    private double[] newY;
+
+    Batch(Arguments arguments) throws IOException {
+        this.steps = arguments.getLong("steps", 100000);
+        this.interval = arguments.getInt("interval", 1000);
+        this.report = arguments.has("report");
+        if (interval < 1) {
+            throw new IllegalArgumentException("--interval must be positive: " + interval);
+        }
+
+        long seed = arguments.getLong("seed", ThreadLocalRandom.current().nextLong());
+        System.err.println("seed: " + seed);
+        this.engine = createEngine(arguments, seed);
+        if (engine.getKernel() instanceof BarnesHutForceKernel) {
+            barnesHut = (BarnesHutForceKernel) engine.getKernel();
+        }
+        if (arguments.has("early-stop")) {
+            detector = createDetector(arguments);
+        }
+        if (arguments.has("checkpoint")) {
+            checkpoint = Paths.get(arguments.getString("checkpoint", null));
+            checkpointInterval = arguments.getInt("checkpoint-interval", 100000);
+            if (checkpointInterval < 1) {
+                throw new IllegalArgumentException("--checkpoint-interval must be positive: " + checkpointInterval);
+            }
+            if (arguments.has("resume") && Files.exists(checkpoint)) {
+                Checkpoint.restore(engine, detector, checkpoint);
+                resumed = true;
+                System.err.println("Resumed from step " + engine.getCount());
+            }
+        }
+        if (arguments.has("trajectory")) {
+            trajectory = new TrajectoryWriter(Paths.get(arguments.getString("trajectory", null)), engine,
+                    arguments.getInt("stride", 1), arguments.has("velocities"), resumed);
+        }
+        if (arguments.has("triads")) {
+            int num = engine.getNum();
+            triads = new TriadBalance(num);
+            preX = new double[num];
+            preY = new double[num];
+            newX = new double[num];
+            newY = new double[num];
+        }
+    }
+
+    /**
+     * Create an engine with the options about the model and the calculation, which are shared by Batch and Sweep.
+     *
+     * @param arguments The command line options.
+     * @param seed      The seed of random numbers.
+     * @return A new engine which hasn't calculated any step.
+     */
+    static SimulationEngine createEngine(Arguments arguments, long seed) {
+        return createEngine(arguments, seed, arguments.has("float"));
+    }
+
+    /**
+     * Same as createEngine(arguments, seed), but whether interactions are calculated in float is given by |single|
+     * instead of --float, so DriftReport can create the same engine in both precisions.
+     *
+     * @param arguments The command line options.
+     * @param seed      The seed of random numbers.
+     * @param single    Calculate interactions in float.
+     * @return A new engine which hasn't calculated any step.
+     */
+    static SimulationEngine createEngine(Arguments arguments, long seed, boolean single) {
+        int num = arguments.getInt("num", 50);
+        int type = arguments.getInt("type", 2);
+
+        // The same center as the default 800x800 window.
+        SimulationEngine engine = new SimulationEngine(num, type, 40, seed);
+        engine.setBoundary(Boundary.valueOf(arguments.getString("boundary", "open").toUpperCase()));
+
+        int threads = arguments.getInt("threads", 1);
+        if (single && (arguments.has("theta") || arguments.has("cutoff") || threads != 1)) {
+            throw new IllegalArgumentException("--float can't be used with --theta, --cutoff or --threads");
+        }
+        if (arguments.has("vector") && (arguments.has("theta") || arguments.has("cutoff") || threads != 1)) {
+            throw new IllegalArgumentException("--vector can't be used with --theta, --cutoff or --threads");
+        }
+        if (arguments.has("theta")) {
+            engine.setKernel(new BarnesHutForceKernel(engine, arguments.getDouble("theta", 0)));
+        } else if (arguments.has("cutoff") && arguments.has("skin")) {
+            engine.setKernel(new VerletListForceKernel(engine, arguments.getDouble("cutoff", 0),
+                    arguments.getDouble("skin", 0)));
+        } else if (arguments.has("cutoff")) {
+            engine.setKernel(new CellListForceKernel(engine, arguments.getDouble("cutoff", 0)));
+        } else if (arguments.has("vector")) {
+            engine.setKernel(createVectorKernel(engine, single));
+        } else if (single) {
+            engine.setKernel(new FloatForceKernel(engine));
+        } else if (threads == 0) {
+            engine.setKernel(new ParallelForceKernel(engine, ForkJoinPool.commonPool()));
+        } else if (threads > 1) {
+            engine.setKernel(new ParallelForceKernel(engine, new ForkJoinPool(threads)));
+        }
+
+        engine.setIntegrator(createIntegrator(arguments));
+        engine.setReorderInterval(arguments.getInt("reorder", 0));
+        engine.setSoftening(arguments.getDouble("softening", 0.0));
+        if (arguments.has("init")) {
+            // Put particles again by the condition. Without --init, the positions from the constructor are kept.
+            engine.setInitialCondition(
+                    InitialCondition.valueOf(arguments.getString("init", "random").toUpperCase().replace('-', '_')),
+                    arguments.getDouble("spacing", 0.5));
+        }
+
+        double[] params = arguments.getDoubles("params");
+        if (params != null) {
+            engine.getParameter().setParams(toMatrix(params, type));
+        }
+        int[] types = arguments.getInts("types");
+        if (types != null) {
+            engine.getParameter().setTypes(types);
+        }
+        return engine;
+    }
+
+    /**
+     * Create a detector with the options about the regime, which are shared by Batch and Sweep.
+     *
+     * @param arguments The command line options.
+     * @return A new detector which has no sample.
+     */
+    static RegimeDetector createDetector(Arguments arguments) {
+        return new RegimeDetector(arguments.getInt("window", RegimeDetector.DEFAULT_WINDOW),
+                arguments.getDouble("converged-v", RegimeDetector.DEFAULT_CONVERGED_V),
+                arguments.getDouble("diverged-x", RegimeDetector.DEFAULT_DIVERGED_X),
+                arguments.getDouble("steady", RegimeDetector.DEFAULT_STEADY));
+    }
+
+    /**
+     * Calculate all steps and print "count,time,X,V" every |interval| steps.
+     * With --early-stop, stop when the swarm settled.
+     */
+    void run() throws IOException {
+        ThreadMXBean bean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long startBytes = bean.getThreadAllocatedBytes(thread);
+        long startTime = System.nanoTime();
+
+        if (!resumed) {
+            System.out.println(triads == null ? "count,time,X,V" : "count,time,X,V,balanced,imbalanced");
+        }
+        ParticleStore store = engine.getStore();
+        long start = engine.getCount();
+        // A run resumed from the checkpoint saved when it settled has nothing more to calculate.
+        boolean settled = detector != null && detector.getRegime().isSettled();
+        for (long i = start; i < steps && !settled; i++) {
+            if (triads != null && (engine.getCount() + 1) % interval == 0) {
+                // Positions are compared by ids, since MortonOrder may move particles in the step.
+                store.copyById(store.x, preX);
+                store.copyById(store.y, preY);
+            }
+            engine.step();
+            settled = engine.getCount() % interval == 0 && print().isSettled();
+            if (checkpoint != null && !settled && engine.getCount() % checkpointInterval == 0) {
+                Checkpoint.save(engine, detector, checkpoint);
+            }
+        }
+        // Save the last step unless the loop already did, also when the run settled at a multiple of
+        // --checkpoint-interval, so a resumed run doesn't calculate and print the same steps again.
+        if (checkpoint != null && (settled || engine.getCount() % checkpointInterval != 0)) {
+            Checkpoint.save(engine, detector, checkpoint);
+        }
+        if (trajectory != null) {
+            trajectory.close();
+        }
+        if (detector != null) {
+            System.err.println("regime: " + detector.getRegime() + " at step " + engine.getCount());
+        }
+
+        long done = engine.getCount() - start;
+        if (report && done > 0) {
+            double nanos = System.nanoTime() - startTime;
+            double bytes = bean.getThreadAllocatedBytes(thread) - startBytes;
+            // Allocation includes printing X and V every |interval| steps.
+            System.err.printf("steps: %d, time/step: %.3f ms, allocation/step: %.1f bytes%n",
+                    done, nanos / done / 1e6, bytes / done);
+            if (trajectory != null) {
+                System.err.printf("trajectory: %d frames%n", trajectory.getFrames());
+            }
+            if (engine.getKernel() instanceof VerletListForceKernel) {
+                VerletListForceKernel verlet = (VerletListForceKernel) engine.getKernel();
+                System.err.printf("Verlet lists: %d builds in %d calculations (every %.1f), %d pairs%n",
+                        verlet.getBuilds(), verlet.getComputes(),
+                        (double) verlet.getComputes() / Math.max(1, verlet.getBuilds()), verlet.getPairs());
+            }
+            if (barnesHut != null) {
+                double[] error = barnesHut.compareWithExact(engine.getStore().x, engine.getStore().y);
+                System.err.printf("Barnes-Hut error: relative RMS: %.3e, max relative: %.3e%n", error[0], error[1]);
+            }
+        }
+    }
+
+    /**
+     * Print a line and add X and V to the detector.
+     *
+     * @return The regime judged by the detector. MOVING without --early-stop.
+     */
+    private Regime print() {
+        Observables observables = engine.getObservables();
+        double x = observables.x;
+        double v = observables.v;
+        String line = engine.getCount() + "," + engine.getTime() + "," + x + "," + v;
+        if (triads != null) {
+            ParticleStore store = engine.getStore();
+            store.copyById(store.x, newX);
+            store.copyById(store.y, newY);
+            long[] counts = triads.update(preX, preY, newX, newY, engine::distance);
+            line += "," + counts[0] + "," + counts[1];
+        }
+        System.out.println(line);
+        return detector == null ? Regime.MOVING : detector.add(x, v);
+    }
+
+    /**
+     * Create VectorForceKernel or FloatVectorForceKernel, which are compiled only by the "vector" profile and need the
+     * incubator module of the Vector API at runtime.
+     *
+     * @param engine The engine of the kernel.
+     * @param single Calculate in float.
+     * @return The vector kernel, or the scalar kernel of the same precision if it is not available.
+     */
+    static ForceKernel createVectorKernel(SimulationEngine engine, boolean single) {
+        try {
+            return (ForceKernel) Class.forName(single ? "sps_p.FloatVectorForceKernel" : "sps_p.VectorForceKernel")
+                    .getDeclaredConstructor(SimulationEngine.class).newInstance(engine);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println("The Vector API is not available, so the scalar kernel is used: " + e);
+            return single ? new FloatForceKernel(engine) : new SerialForceKernel(engine);
+        }
+    }
+
+    private static Integrator createIntegrator(Arguments arguments) {
+        double dt = arguments.getDouble("dt", SimulationEngine.TIME_STEP);
+        String name = arguments.getString("integrator", "euler");
+        switch (name) {
+            case "euler":
+                return new EulerIntegrator(dt);
+            case "rk4":
+                return new RungeKuttaIntegrator(dt);
+            case "adaptive":
+                return new AdaptiveIntegrator(dt, dt / 1000, arguments.getDouble("max-dt", 100 * dt),
+                        arguments.getDouble("tolerance", 1e-6));
+            default:
+                throw new IllegalArgumentException("Unknown --integrator: " + name);
+        }
+    }
+
+    private static double[][] toMatrix(double[] params, int type) {
+        if (params.length != type * type) {
+            throw new IllegalArgumentException("--params needs " + type * type + " values but got " + params.length);
+        }
+        double[][] matrix = new double[type][type];
+        for (int i = 0; i < type; i++) {
+            System.arraycopy(params, type * i, matrix[i], 0, type);
+        }
+        return matrix;
+    }
+}
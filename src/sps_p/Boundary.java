@@ -0,0 +1,43 @@
+package sps_p;
+
+/**
+ * Boundary condition of the space where particles move.
+ * OPEN is an infinite plane and PERIODIC is a torus whose side length is SimulationEngine.CYCLE_L.
+ */
+enum Boundary {
+    OPEN,
+    PERIODIC;
+
+    private static final double INV_CYCLE_L = 1.0 / SimulationEngine.CYCLE_L;
+
+    /**
+     * Calculate |Rij| which denotes the distance between particle i and particle j.
+     *
+     * @param x1 The position x of particle I.
+     * @param y1 The position y of particle I.
+     * @param x2 The position x of particle J.
+     * @param y2 The position y of particle J.
+     * @return The distance between particle i and particle j.
+     */
+    double distance(double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        if (this == PERIODIC) {
+            dx = minimumImage(dx);
+            dy = minimumImage(dy);
+        }
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Return the closest difference on one axis among the images of particle J in a periodic boundary
+     * (minimum image convention). The image is chosen by rounding, so this needs neither a loop nor a square root.
+     * The result is between -CYCLE_L / 2 and CYCLE_L / 2.
+     *
+     * @param d The difference of positions on one axis, pj - pi.
+     * @return The closest difference on the axis.
+     */
+    static double minimumImage(double d) {
+        return d - SimulationEngine.CYCLE_L * Math.rint(d * INV_CYCLE_L);
+    }
+}
@@ -0,0 +1,197 @@
+package sps_p;
+
+import java.util.Arrays;
+
+/**
+ * Calculate interactions only between particles closer than a cutoff radius.
+ * Particles are sorted into a uniform grid of cells whose size is at least the cutoff, which is rebuilt every step,
+ * so only particles in the same cell and the neighbor cells are visited. Each pair of cells is visited once by
+ * looking at 4 of 8 neighbors (right, lower left, lower and lower right).
+ * <p>
+ * OPEN: The grid covers the bounding box of particles in each step.
+ * PERIODIC: The grid covers the space from 0 to CYCLE_L and the cells at the edges are neighbors of each other.
+ * If less than 3 cells fit in CYCLE_L, all particles are put in one cell.
+ */
+class CellListForceKernel extends ForceKernel {
+    /**
+     * The offsets of neighbor cells visited from a cell. The other 4 neighbors visit the cell instead.
+     */
+    private static final int[][] HALF_NEIGHBORS = {{1, 0}, {-1, 1}, {0, 1}, {1, 1}};
+
+    /**
+     * The maximum number of cells per particle. The cells become larger than the cutoff when particles spread widely
+     * in an open boundary.
+     */
+    private static final int MAX_CELLS_PER_PARTICLE = 2;
+
+    private double cutoff;
+
+    private int nx, ny;
+    private double cellSize;
+    private double originX, originY;
+    private boolean wrap;
+
+    /**
+     * The particles in the cell c are order[cellStart[c]] ... order[cellStart[c + 1] - 1].
+     */
+    private int[] cellStart = new int[0];
+    private int[] order = new int[0];
+    private int[] cellOf = new int[0];
+
+    /**
+     * @param engine The engine which has parameter K and a boundary.
+     * @param cutoff The distance beyond which interactions are ignored.
+     */
+    CellListForceKernel(SimulationEngine engine, double cutoff) {
+        super(engine);
+        if (cutoff <= 0) {
+            throw new IllegalArgumentException("cutoff must be positive: " + cutoff);
+        }
+        this.cutoff = cutoff;
+    }
+
+    @Override
+    void compute(double[] x, double[] y, double[] fx, double[] fy) {
+        Arrays.fill(fx, 0.0);
+        Arrays.fill(fy, 0.0);
+        boolean periodic = engine.getBoundary() == Boundary.PERIODIC;
+        build(x, y, periodic);
+
+        Parameter parameter = engine.getParameter();
+        double cutoff2 = cutoff * cutoff;
+        double eps2 = engine.getSoftening() * engine.getSoftening();
+        int c, n, ncx, ncy;
+        int i, j;
+        double dx, dy, dis2;
+
+        for (int cy = 0; cy < ny; cy++) {
+            for (int cx = 0; cx < nx; cx++) {
+                c = cy * nx + cx;
+                for (int a = cellStart[c]; a < cellStart[c + 1]; a++) {
+                    i = order[a];
+
+                    // Pairs in the same cell.
+                    for (int b = a + 1; b < cellStart[c + 1]; b++) {
+                        j = order[b];
+                        dx = x[j] - x[i];
+                        dy = y[j] - y[i];
+                        if (periodic) {
+                            dx = Boundary.minimumImage(dx);
+                            dy = Boundary.minimumImage(dy);
+                        }
+                        dis2 = dx * dx + dy * dy;
+                        if (dis2 <= cutoff2) {
+                            addPair(parameter, i, j, dx, dy, Math.sqrt(dis2 + eps2), fx, fy);
+                        }
+                    }
+
+                    // Pairs with neighbor cells.
+                    for (int[] offset : HALF_NEIGHBORS) {
+                        ncx = cx + offset[0];
+                        ncy = cy + offset[1];
+                        if (wrap) {
+                            ncx = (ncx + nx) % nx;
+                            ncy = (ncy + ny) % ny;
+                        } else if (ncx < 0 || ncx >= nx || ncy < 0 || ncy >= ny) {
+                            continue;
+                        }
+                        n = ncy * nx + ncx;
+                        for (int b = cellStart[n]; b < cellStart[n + 1]; b++) {
+                            j = order[b];
+                            dx = x[j] - x[i];
+                            dy = y[j] - y[i];
+                            if (periodic) {
+                                dx = Boundary.minimumImage(dx);
+                                dy = Boundary.minimumImage(dy);
+                            }
+                            dis2 = dx * dx + dy * dy;
+                            if (dis2 <= cutoff2) {
+                                addPair(parameter, i, j, dx, dy, Math.sqrt(dis2 + eps2), fx, fy);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Decide the grid and sort particles into cells by counting sort.
+     *
+     * @param x        The positions x of particles.
+     * @param y        The positions y of particles.
+     * @param periodic True if the boundary is periodic.
+     */
+    private void build(double[] x, double[] y, boolean periodic) {
+        int num = x.length;
+        if (periodic) {
+            int cells = (int) (SimulationEngine.CYCLE_L / cutoff);
+            if (cells < 3) {
+                cells = 1;
+            }
+            nx = cells;
+            ny = cells;
+            cellSize = (double) SimulationEngine.CYCLE_L / cells;
+            originX = 0;
+            originY = 0;
+            wrap = cells >= 3;
+        } else {
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < num; i++) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+            cellSize = cutoff;
+            double maxCells = Math.max(16, (double) MAX_CELLS_PER_PARTICLE * num);
+            double cells = (Math.floor((maxX - minX) / cellSize) + 1) * (Math.floor((maxY - minY) / cellSize) + 1);
+            if (cells > maxCells) {
+                cellSize *= Math.sqrt(cells / maxCells) * 1.01;
+            }
+            nx = (int) ((maxX - minX) / cellSize) + 1;
+            ny = (int) ((maxY - minY) / cellSize) + 1;
+            originX = minX;
+            originY = minY;
+            wrap = false;
+        }
+
+        int cells = nx * ny;
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+        }
+        if (order.length < num) {
+            order = new int[num];
+            cellOf = new int[num];
+        }
+
+        Arrays.fill(cellStart, 0, cells + 1, 0);
+        for (int i = 0; i < num; i++) {
+            cellOf[i] = cell((x[i] - originX) / cellSize, nx) + nx * cell((y[i] - originY) / cellSize, ny);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        // Now cellStart[c + 1] is the end of the cell c. Fill each cell from its end in reverse order of particles,
+        // then cellStart[c + 1] becomes the start of the cell c.
+        for (int i = num - 1; i >= 0; i--) {
+            order[--cellStart[cellOf[i] + 1]] = i;
+        }
+        System.arraycopy(cellStart, 1, cellStart, 0, cells);
+        cellStart[cells] = num;
+    }
+
+    /**
+     * @param position The position in units of cells.
+     * @param cells    The number of cells on the axis.
+     * @return The index of the cell on the axis.
+     */
+    private int cell(double position, int cells) {
+        int c = (int) Math.floor(position);
+        if (c < 0) return wrap ? (c % cells + cells) % cells : 0;
+        if (c >= cells) return wrap ? c % cells : cells - 1;
+        return c;
+    }
+}
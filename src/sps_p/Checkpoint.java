@@ -0,0 +1,208 @@
+package sps_p;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Save and restore all state of an engine which changes while it runs, so a restored engine calculates exactly the
+ * same steps as the saved one. The state of the random generator is also saved, so random numbers after restoring
+ * are the same, too. The kernel and the integrator are not saved and must be created with the same options,
+ * but the state of the integrator like the next time step of AdaptiveIntegrator is saved. The samples of
+ * RegimeDetector are saved with them, so a resumed run with --early-stop stops at the same step.
+ * <p>
+ * A checkpoint is written into a temporary file next to it and renamed, so the previous checkpoint remains if writing
+ * stops in the middle.
+ * <p>
+ * Format: (big endian)
+ * int MAGIC, int VERSION, int num, int type, int boundary, int count, double time, double dt of the last step,
+ * long seed, long[4] state of the random generator, int n, double[n] integrator state, int m, double[m] detector state
+ * (m is 0 without a detector), double[type * type] parameter K, int[num] types, int[num] ids, double[num] x, y, vx, vy,
+ * long CRC32 of all previous bytes. Particles are in the order of slots of ParticleStore, and ids tells the id of each slot, so a run which sorts
+ * particles by MortonOrder resumes with the same order.
+ */
+class Checkpoint {
+    static final int MAGIC = 0x53505343; // "SPSC"
+    static final int VERSION = 1;
+
+    /**
+     * Write the state of |engine| into |path| atomically.
+     */
+    static void save(SimulationEngine engine, Path path) throws IOException {
+        save(engine, null, path);
+    }
+
+    /**
+     * Write the state of |engine| and |detector| into |path| atomically.
+     *
+     * @param detector The detector of --early-stop, or null.
+     */
+    static void save(SimulationEngine engine, RegimeDetector detector, Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc)));
+            Parameter parameter = engine.getParameter();
+            ParticleStore store = engine.getStore();
+            int num = engine.getNum();
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(num);
+            out.writeInt(engine.getType());
+            out.writeInt(engine.getBoundary().ordinal());
+            out.writeInt(engine.getCount());
+            out.writeDouble(engine.getTime());
+            out.writeDouble(engine.getDt());
+            out.writeLong(engine.getSeed());
+            for (long value : engine.getRandom().getState()) {
+                out.writeLong(value);
+            }
+            double[] state = engine.getIntegrator().getState();
+            out.writeInt(state.length);
+            writeDoubles(out, state, state.length);
+            double[] samples = detector == null ? new double[0] : detector.getState();
+            out.writeInt(samples.length);
+            writeDoubles(out, samples, samples.length);
+            writeDoubles(out, parameter.flatParams, parameter.flatParams.length);
+            for (int i = 0; i < num; i++) {
+                out.writeInt(parameter.types[i]);
+            }
+            for (int i = 0; i < num; i++) {
+                out.writeInt(store.ids[i]);
+            }
+            writeDoubles(out, store.x, num);
+            writeDoubles(out, store.y, num);
+            writeDoubles(out, store.vx, num);
+            writeDoubles(out, store.vy, num);
+            out.flush();
+            // The checksum doesn't include itself.
+            long checksum = crc.getValue();
+            out.writeLong(checksum);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a checkpoint into |engine|, which must have the same number of particles and types as the saved one.
+     */
+    static void restore(SimulationEngine engine, Path path) throws IOException {
+        restore(engine, null, path);
+    }
+
+    /**
+     * Read a checkpoint into |engine| and |detector|. The detector must have the same window as the saved one. It is
+     * cleared if the checkpoint was saved without a detector, and the saved samples are ignored without |detector|.
+     *
+     * @param detector The detector of --early-stop, or null.
+     */
+    static void restore(SimulationEngine engine, RegimeDetector detector, Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        // The checksum is calculated above the buffer, so it doesn't include bytes which are read ahead.
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path)), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version of a checkpoint file: " + version);
+            }
+            int num = in.readInt();
+            int type = in.readInt();
+            if (num != engine.getNum() || type != engine.getType()) {
+                throw new IllegalArgumentException("The checkpoint has " + num + " particles of " + type
+                        + " types, but the engine has " + engine.getNum() + " particles of " + engine.getType() + " types");
+            }
+            int boundary = in.readInt();
+            int count = in.readInt();
+            double time = in.readDouble();
+            double dt = in.readDouble();
+            long seed = in.readLong();
+            long[] random = new long[4];
+            for (int i = 0; i < 4; i++) {
+                random[i] = in.readLong();
+            }
+            double[] state = readDoubles(in, in.readInt());
+            double[] samples = readDoubles(in, in.readInt());
+            double[] flatParams = readDoubles(in, type * type);
+            int[] types = new int[num];
+            for (int i = 0; i < num; i++) {
+                types[i] = in.readInt();
+            }
+            int[] ids = new int[num];
+            for (int i = 0; i < num; i++) {
+                ids[i] = in.readInt();
+            }
+            double[] x = readDoubles(in, num);
+            double[] y = readDoubles(in, num);
+            double[] vx = readDoubles(in, num);
+            double[] vy = readDoubles(in, num);
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("The checkpoint is broken: " + path);
+            }
+            checkPermutation(ids, path);
+
+            // Change the engine only after the whole file is verified.
+            double[][] params = new double[type][type];
+            for (int i = 0; i < type; i++) {
+                System.arraycopy(flatParams, type * i, params[i], 0, type);
+            }
+            engine.getParameter().restoreParams(params);
+            engine.getParameter().setTypes(types);
+            engine.getIntegrator().setState(state);
+            if (detector != null) {
+                if (samples.length == 0) {
+                    detector.clear();
+                } else {
+                    detector.setState(samples);
+                }
+            }
+            engine.restoreRandom(seed, random);
+            engine.restore(Boundary.values()[boundary], count, time, dt, x, y, vx, vy, ids);
+        }
+    }
+
+    /**
+     * Check that each id appears exactly once.
+     */
+    private static void checkPermutation(int[] ids, Path path) throws IOException {
+        boolean[] seen = new boolean[ids.length];
+        for (int id : ids) {
+            if (id < 0 || id >= ids.length || seen[id]) {
+                throw new IOException("The checkpoint has a wrong id " + id + ": " + path);
+            }
+            seen[id] = true;
+        }
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] values, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.writeDouble(values[i]);
+        }
+    }
+
+    private static double[] readDoubles(DataInputStream in, int length) throws IOException {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+}
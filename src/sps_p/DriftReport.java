@@ -0,0 +1,96 @@
+package sps_p;
+
+import sps_p.utils.Arguments;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Run the same simulation in double and in float (see --float of Batch) side by side, and print how far X and V of the
+ * float run drift from the double one. Both runs start from the same seed, so they have the same initial positions and
+ * parameter K, and differ only by the rounding of interactions.
+ * <p>
+ * The swarm is sensitive to small differences, so X and V of the 2 runs separate by several percent after some
+ * thousand steps even when each step differs only by rounding. To tell how much of it comes from float, a third run in
+ * double starts from the initial positions rounded to float, and its difference from the double run is printed as the
+ * noise. The float mode is good enough when the error stays at the level of the noise.
+ * <p>
+ * Options: (The options of Batch about the model and the calculation are used for all runs, except --float.)
+ * --steps    The number of steps. (default: 100000)
+ * --interval Compare X and V every this number of steps. (default: 1000)
+ * --seed     The seed of random numbers of all runs. (default: random)
+ */
+class DriftReport {
+    private SimulationEngine reference;
+    private SimulationEngine single;
+    private SimulationEngine rounded;
+    private long steps;
+    private int interval;
+
+    DriftReport(Arguments arguments) {
+        this.steps = arguments.getLong("steps", 100000);
+        this.interval = arguments.getInt("interval", 1000);
+        if (interval < 1) {
+            throw new IllegalArgumentException("--interval must be positive: " + interval);
+        }
+        long seed = arguments.getLong("seed", ThreadLocalRandom.current().nextLong());
+        System.err.println("seed: " + seed);
+        this.reference = Batch.createEngine(arguments, seed, false);
+        this.single = Batch.createEngine(arguments, seed, true);
+        this.rounded = Batch.createEngine(arguments, seed, false);
+        ParticleStore store = rounded.getStore();
+        for (int i = 0; i < store.num; i++) {
+            store.x[i] = (float) store.x[i];
+            store.y[i] = (float) store.y[i];
+        }
+    }
+
+    /**
+     * Print "count,X,V,floatX,floatV,errorX,errorV,noiseX,noiseV" every |interval| steps, where the errors and the
+     * noise are relative to the double run. The largest errors and noise, and the time per step of the double and the
+     * float runs are printed to stderr at the end.
+     */
+    void run() {
+        System.out.println("count,X,V,floatX,floatV,errorX,errorV,noiseX,noiseV");
+        long referenceNanos = 0;
+        long singleNanos = 0;
+        double maxX = 0;
+        double maxV = 0;
+        double maxNoiseX = 0;
+        double maxNoiseV = 0;
+        for (long done = 0; done < steps; ) {
+            long n = Math.min(interval, steps - done);
+            long start = System.nanoTime();
+            reference.run(n);
+            long middle = System.nanoTime();
+            single.run(n);
+            singleNanos += System.nanoTime() - middle;
+            referenceNanos += middle - start;
+            rounded.run(n);
+            done += n;
+
+            Observables r = reference.getObservables();
+            Observables s = single.getObservables();
+            Observables p = rounded.getObservables();
+            double errorX = relative(s.x, r.x);
+            double errorV = relative(s.v, r.v);
+            double noiseX = relative(p.x, r.x);
+            double noiseV = relative(p.v, r.v);
+            maxX = Math.max(maxX, errorX);
+            maxV = Math.max(maxV, errorV);
+            maxNoiseX = Math.max(maxNoiseX, noiseX);
+            maxNoiseV = Math.max(maxNoiseV, noiseV);
+            System.out.println(done + "," + r.x + "," + r.v + "," + s.x + "," + s.v + "," + errorX + "," + errorV + ","
+                    + noiseX + "," + noiseV);
+        }
+        if (steps > 0) {
+            System.err.printf("max relative error: X %.3e, V %.3e%n", maxX, maxV);
+            System.err.printf("max relative noise: X %.3e, V %.3e%n", maxNoiseX, maxNoiseV);
+            System.err.printf("time/step: double %.3f ms, float %.3f ms%n",
+                    referenceNanos / 1e6 / steps, singleNanos / 1e6 / steps);
+        }
+    }
+
+    private static double relative(double value, double reference) {
+        return Math.abs(value - reference) / Math.abs(reference);
+    }
+}
@@ -7,23 +7,55 @@ import java.awt.event.WindowEvent;
 
 /**
  * Display a window. The main task is to initialize two main components, JFrame and JPanel, and put JPanel on JFrame.
+ * JPanel is a viewer of SimulationEngine which calculates particles' positions.
  */
 class Environment {
+    /**
+     * Add X and V to the detector every this number of steps, which is the same as the plot of Swarm.
+     */
+    private static final int SAMPLE_INTERVAL = 100;
+
     private JFrame frame;
+    private SimulationEngine engine;
     private Swarm swarm;
 
     Environment(int width, int height, int num, int type) {
         this.frame = initFrame(width, height);
-        this.swarm = initSwarm(width, height, num, type);
+        this.engine = new SimulationEngine(num, type, (width / 2) / Swarm.SCALE);
+        this.swarm = initSwarm(width, height, engine);
         frame.add(swarm, BorderLayout.CENTER);
     }
 
     /**
-     * Keep to update Swarm's state.
+     * Keep to update SimulationEngine's state until the swarm settled. Then wait until the positions are reset from the
+     * window, for example by changing parameters, and start again.
+     * The window doesn't change the engine itself but posts actions, which run here before the next step.
      */
-    void run() {
-        // TODO: Keep the screen position to chase the middle of particles while running. This might be implemented by using Graphics2D.scale(). However, need to divide Swarm and Parameter class to use it.
-        while (true) swarm.run();
+    void run() throws InterruptedException {
+        // TODO: Keep the screen position to chase the middle of particles while running. This might be implemented by using Graphics2D.scale().
+        RegimeDetector detector = new RegimeDetector();
+        int settledAt = -1;
+        while (true) {
+            if (engine.runPosted()) {
+                // Every action of the window resets the positions.
+                detector.clear();
+                settledAt = -1;
+            }
+            if (engine.getCount() == settledAt) {
+                Thread.sleep(100);
+                continue;
+            }
+
+            engine.step();
+            if (engine.getCount() % SAMPLE_INTERVAL == 0) {
+                Observables observables = engine.getObservables();
+                Regime regime = detector.add(observables.x, observables.v);
+                if (regime.isSettled()) {
+                    settledAt = engine.getCount();
+                    System.out.println("Stopped because the swarm is " + regime + " at step " + settledAt);
+                }
+            }
+        }
     }
 
     /**
@@ -54,12 +86,11 @@ class Environment {
      *
      * @param width  The width of a window.
      * @param height The height of a window.
-     * @param num    The number of particles.
-     * @param type   The number of type of particles.
+     * @param engine The engine which Swarm shows.
      * @return Initialized sps_p.Swarm.
      */
-    private Swarm initSwarm(int width, int height, int num, int type) {
-        Swarm swarm = new Swarm(width, height, num, type);
+    private Swarm initSwarm(int width, int height, SimulationEngine engine) {
+        Swarm swarm = new Swarm(width, height, engine);
         swarm.setBackground(Color.WHITE);
         swarm.setSize(new Dimension(width, height));
         return swarm;
@@ -0,0 +1,26 @@
+package sps_p;
+
+/**
+ * Explicit Euler method. ri(t + dt) = ri(t) + dt * (dot)ri(t).
+ * This is the cheapest integrator which evaluates interactions once per step.
+ */
+class EulerIntegrator implements Integrator {
+    private double dt;
+
+    EulerIntegrator(double dt) {
+        if (dt <= 0) {
+            throw new IllegalArgumentException("dt must be positive: " + dt);
+        }
+        this.dt = dt;
+    }
+
+    @Override
+    public double step(ParticleStore store, ForceKernel kernel) {
+        kernel.compute(store.x, store.y, store.vx, store.vy);
+        for (int i = 0; i < store.num; i++) {
+            store.x[i] += dt * store.vx[i];
+            store.y[i] += dt * store.vy[i];
+        }
+        return dt;
+    }
+}
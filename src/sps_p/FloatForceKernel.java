@@ -0,0 +1,113 @@
+package sps_p;
+
+import java.util.Arrays;
+
+/**
+ * Calculate all pairs on the calling thread in single precision.
+ * Positions are copied into float arrays once per call, so the loop over pairs reads half of the memory, and Rij, |Rij|
+ * and the interaction of each pair are calculated in float. The copies are relative to the center of the swarm, since
+ * float has much less precision around the initial center 40 than around 0, and only differences of positions are
+ * used.
+ * <p>
+ * Only the sums are double: the sum of a row i is a double local variable and (dot)rj is added into the double output,
+ * so the rounding error of a sum doesn't grow with N.
+ * <p>
+ * The results differ from SerialForceKernel by a few ULPs of float per pair. DriftReport shows how much X and V drift
+ * from the double calculation over a run.
+ * <p>
+ * The minimum image in a periodic boundary is calculated by comparisons, which is the same as Boundary.minimumImage()
+ * while positions are within one period from each other, as they are after imaging.
+ */
+class FloatForceKernel extends ForceKernel {
+    private static final float L = SimulationEngine.CYCLE_L;
+    private static final float HALF_L = L / 2;
+
+    private float[] xf;
+    private float[] yf;
+    private float[] kf;
+
+    FloatForceKernel(SimulationEngine engine) {
+        super(engine);
+    }
+
+    @Override
+    void compute(double[] x, double[] y, double[] fx, double[] fy) {
+        Parameter parameter = engine.getParameter();
+        int[] types = parameter.types;
+        double[] k = parameter.flatParams;
+        int pType = parameter.pType;
+        boolean periodic = engine.getBoundary() == Boundary.PERIODIC;
+        float eps2 = (float) (engine.getSoftening() * engine.getSoftening());
+        int n = x.length;
+        if (xf == null || xf.length != n) {
+            xf = new float[n];
+            yf = new float[n];
+        }
+        if (kf == null || kf.length != k.length) {
+            kf = new float[k.length];
+        }
+        float[] xf = this.xf;
+        float[] yf = this.yf;
+        float[] kf = this.kf;
+        for (int t = 0; t < k.length; t++) {
+            kf[t] = (float) k[t];
+        }
+        double cx = center(x);
+        double cy = center(y);
+        for (int i = 0; i < n; i++) {
+            xf[i] = (float) (x[i] - cx);
+            yf[i] = (float) (y[i] - cy);
+        }
+        Arrays.fill(fx, 0.0);
+        Arrays.fill(fy, 0.0);
+
+        for (int i = 0; i < n; i++) {
+            double sumX = 0.0;
+            double sumY = 0.0;
+            int ti = types[i];
+            int rowI = ti * pType;
+            float xi = xf[i];
+            float yi = yf[i];
+
+            for (int j = i + 1; j < n; j++) {
+                float dx = xf[j] - xi;
+                float dy = yf[j] - yi;
+                if (periodic) {
+                    dx = minimumImage(dx);
+                    dy = minimumImage(dy);
+                }
+                float inv = 1.0f / (float) Math.sqrt(dx * dx + dy * dy + eps2); // |Rij|^(-1).
+                float rep = inv * inv; // |Rij|^(-2).
+
+                // (kij|Rij|^(-1) - |Rij|^(-2)) / |Rij| for i, and the same with kji for j.
+                float fij = (kf[rowI + types[j]] * inv - rep) * inv;
+                float fji = (kf[types[j] * pType + ti] * inv - rep) * inv;
+                sumX += fij * dx;
+                sumY += fij * dy;
+                fx[j] -= fji * dx;
+                fy[j] -= fji * dy;
+            }
+            fx[i] += sumX;
+            fy[i] += sumY;
+        }
+    }
+
+    /**
+     * @return The middle of the smallest and the largest values.
+     */
+    static double center(double[] values) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return values.length == 0 ? 0.0 : (min + max) / 2;
+    }
+
+    private static float minimumImage(float d) {
+        if (d > HALF_L) return d - L;
+        if (d < -HALF_L) return d + L;
+        return d;
+    }
+}
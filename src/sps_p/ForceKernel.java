@@ -0,0 +1,107 @@
+package sps_p;
+
+/**
+ * Calculate the sum of interactions (dot)ri = Σ(i!=j) (kij|Rij|^(-1) - |Rij|^(-2)) * ^Rij for all particles.
+ * Rij = rj - ri, ^Rij = Rij / |Rij|, and kij denotes a constant that represents
+ * "to what extent person i prefers person j".
+ */
+abstract class ForceKernel {
+    SimulationEngine engine;
+
+    ForceKernel(SimulationEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Calculate (dot)ri for all particles at the positions x and y.
+     *
+     * @param x  The positions x of particles.
+     * @param y  The positions y of particles.
+     * @param fx The array to write (dot)ri on the x axis.
+     * @param fy The array to write (dot)ri on the y axis.
+     */
+    abstract void compute(double[] x, double[] y, double[] fx, double[] fy);
+
+    /**
+     * Add the contributions of all pairs (i, j) such that from <= i < to and i < j into fx and fy.
+     * |Rij| = |Rji| and Rij = -Rji, so each pair is visited only once and its contribution is added to both
+     * particles. Only kij and kji are different between the two.
+     * The elements of fx and fy from |from| to the end must be cleared before calling this.
+     *
+     * @param from The first row i.
+     * @param to   The row after the last row i.
+     * @param x    The positions x of particles.
+     * @param y    The positions y of particles.
+     * @param fx   The accumulator on the x axis.
+     * @param fy   The accumulator on the y axis.
+     */
+    void accumulateRows(int from, int to, double[] x, double[] y, double[] fx, double[] fy) {
+        Parameter parameter = engine.getParameter();
+        int[] types = parameter.types;
+        double[] k = parameter.flatParams;
+        int pType = parameter.pType;
+        boolean periodic = engine.getBoundary() == Boundary.PERIODIC;
+        double eps2 = engine.getSoftening() * engine.getSoftening();
+        int n = x.length;
+        int rowI, ti;
+        double dx, dy;
+        double dis;
+        double inv, rep;
+        double fij, fji;
+        double sumX, sumY;
+
+        for (int i = from; i < to; i++) {
+            sumX = 0.0;
+            sumY = 0.0;
+            ti = types[i];
+            rowI = ti * pType;
+
+            for (int j = i + 1; j < n; j++) {
+                dx = x[j] - x[i];
+                dy = y[j] - y[i];
+                if (periodic) {
+                    dx = Boundary.minimumImage(dx);
+                    dy = Boundary.minimumImage(dy);
+                }
+                dis = Math.sqrt(dx * dx + dy * dy + eps2);
+                inv = 1.0 / dis; // |Rij|^(-1).
+                rep = inv * inv; // |Rij|^(-2).
+
+                // (kij|Rij|^(-1) - |Rij|^(-2)) / |Rij| for i, and the same with kji for j.
+                fij = (k[rowI + types[j]] * inv - rep) * inv;
+                fji = (k[types[j] * pType + ti] * inv - rep) * inv;
+                sumX += fij * dx;
+                sumY += fij * dy;
+                fx[j] -= fji * dx;
+                fy[j] -= fji * dy;
+            }
+            fx[i] += sumX;
+            fy[i] += sumY;
+        }
+    }
+
+    /**
+     * Add the interaction of one pair into both particles. This is the same calculation as accumulateRows().
+     *
+     * @param parameter The parameter K.
+     * @param i         The index of particle i.
+     * @param j         The index of particle j.
+     * @param dx        Rij on the x axis.
+     * @param dy        Rij on the y axis.
+     * @param dis       |Rij|, softened by SimulationEngine.getSoftening().
+     * @param fx        The accumulator on the x axis.
+     * @param fy        The accumulator on the y axis.
+     */
+    final void addPair(Parameter parameter, int i, int j, double dx, double dy, double dis, double[] fx, double[] fy) {
+        double inv = 1.0 / dis; // |Rij|^(-1).
+        double rep = inv * inv; // |Rij|^(-2).
+        int ti = parameter.types[i];
+        int tj = parameter.types[j];
+        double fij = (parameter.flatParams[ti * parameter.pType + tj] * inv - rep) * inv;
+        double fji = (parameter.flatParams[tj * parameter.pType + ti] * inv - rep) * inv;
+        fx[i] += fij * dx;
+        fy[i] += fij * dy;
+        fx[j] -= fji * dx;
+        fy[j] -= fji * dy;
+    }
+}
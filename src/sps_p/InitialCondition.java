@@ -0,0 +1,166 @@
+package sps_p;
+
+import sps_p.utils.Xoshiro256;
+
+import java.util.Arrays;
+
+/**
+ * The way to put particles at the start of a run.
+ * RANDOM drops all particles uniformly into the square from center - 1 to center + 1, which puts pairs of particles
+ * very close together when N is large. The -|Rij|^(-2) term of such pairs is huge, so the first steps need a small time
+ * step. The other conditions keep particles about |spacing| apart:
+ * LATTICE puts particles on a square grid whose side is |spacing|,
+ * JITTERED puts each particle at a uniform position in its own square of the same grid, and
+ * POISSON_DISK puts particles at random positions which are at least |spacing| apart (Bridson's algorithm).
+ * <p>
+ * Particles of each type are contiguous in ids, so sites are given to particles in a random order to mix types.
+ * All random numbers come from the generator of the run, so the same seed gives the same positions.
+ */
+enum InitialCondition {
+    RANDOM,
+    LATTICE,
+    JITTERED,
+    POISSON_DISK;
+
+    /**
+     * The number of candidates tried around a point of POISSON_DISK before the point is given up.
+     */
+    private static final int CANDIDATES = 30;
+
+    /**
+     * Put all particles around |center| and clear their velocities.
+     *
+     * @param store   Positions and velocities of particles in the order of ids.
+     * @param center  The center of the initial positions.
+     * @param spacing The distance between neighboring particles. RANDOM doesn't use it.
+     * @param random  The generator of the run.
+     */
+    void place(ParticleStore store, int center, double spacing, Xoshiro256 random) {
+        if (this == RANDOM) {
+            store.initPositions(center - 1, center + 1, random);
+            return;
+        }
+        if (!(spacing > 0) || Double.isInfinite(spacing)) {
+            throw new IllegalArgumentException("spacing must be positive: " + spacing);
+        }
+        int num = store.num;
+        double[] sx = new double[num];
+        double[] sy = new double[num];
+        if (this == POISSON_DISK) {
+            poissonDisk(sx, sy, center, spacing, random);
+        } else {
+            grid(sx, sy, center, spacing, this == JITTERED, random);
+        }
+
+        // Fisher-Yates shuffle of the sites.
+        int[] sites = new int[num];
+        for (int i = 0; i < num; i++) {
+            sites[i] = i;
+        }
+        for (int i = num - 1; i > 0; i--) {
+            int r = random.nextInt(i + 1);
+            int swap = sites[i];
+            sites[i] = sites[r];
+            sites[r] = swap;
+        }
+        for (int i = 0; i < num; i++) {
+            store.x[i] = sx[sites[i]];
+            store.y[i] = sy[sites[i]];
+            store.vx[i] = 0.0;
+            store.vy[i] = 0.0;
+        }
+    }
+
+    /**
+     * Put sites on the smallest square grid which holds all of them, row by row from the bottom.
+     */
+    private static void grid(double[] sx, double[] sy, int center, double spacing, boolean jitter,
+                             Xoshiro256 random) {
+        int side = (int) Math.ceil(Math.sqrt(sx.length));
+        double origin = -0.5 * (side - 1) * spacing;
+        for (int i = 0; i < sx.length; i++) {
+            double dx = 0.0;
+            double dy = 0.0;
+            if (jitter) {
+                dx = (random.nextDouble() - 0.5) * spacing;
+                dy = (random.nextDouble() - 0.5) * spacing;
+            }
+            sx[i] = center + origin + (i % side) * spacing + dx;
+            sy[i] = center + origin + (i / side) * spacing + dy;
+        }
+    }
+
+    /**
+     * Grow sites from |center| by Bridson's algorithm. Each new site is tried at a random distance from |spacing| to
+     * 2 * |spacing| around a random active site, and accepted when no site is closer than |spacing|. An active site is
+     * dropped after CANDIDATES failures. Sites are kept in a grid of squares whose diagonal is |spacing|, so each
+     * square has at most one site and a candidate is checked against 5 x 5 squares, which makes the whole O(N).
+     * The grid is large enough that the active sites never run out before N sites, since a saturated Poisson-disk
+     * pattern has more than 0.5 sites per |spacing|^2.
+     */
+    private static void poissonDisk(double[] sx, double[] sy, int center, double spacing, Xoshiro256 random) {
+        int num = sx.length;
+        if (num == 0) {
+            return;
+        }
+        double cellSize = spacing / Math.sqrt(2);
+        double half = spacing * (Math.sqrt(num) + 1);
+        int cells = (int) Math.ceil(2 * half / cellSize);
+        double min = center - half;
+        int[] grid = new int[cells * cells];
+        Arrays.fill(grid, -1);
+        int[] active = new int[num];
+        double spacing2 = spacing * spacing;
+
+        sx[0] = center;
+        sy[0] = center;
+        grid[cell(center, min, cellSize) * cells + cell(center, min, cellSize)] = 0;
+        active[0] = 0;
+        int actives = 1;
+        int count = 1;
+
+        while (count < num) {
+            if (actives == 0) {
+                throw new IllegalStateException("Poisson-disk sites ran out at " + count + " of " + num);
+            }
+            int a = random.nextInt(actives);
+            int p = active[a];
+            boolean found = false;
+            for (int c = 0; c < CANDIDATES && !found; c++) {
+                double angle = 2 * Math.PI * random.nextDouble();
+                double radius = spacing * (1 + random.nextDouble());
+                double x = sx[p] + radius * Math.cos(angle);
+                double y = sy[p] + radius * Math.sin(angle);
+                if (x < min || x >= min + cells * cellSize || y < min || y >= min + cells * cellSize) {
+                    continue;
+                }
+                int cx = cell(x, min, cellSize);
+                int cy = cell(y, min, cellSize);
+                found = true;
+                for (int ny = Math.max(0, cy - 2); ny <= Math.min(cells - 1, cy + 2) && found; ny++) {
+                    for (int nx = Math.max(0, cx - 2); nx <= Math.min(cells - 1, cx + 2); nx++) {
+                        int q = grid[ny * cells + nx];
+                        if (q >= 0 && (sx[q] - x) * (sx[q] - x) + (sy[q] - y) * (sy[q] - y) < spacing2) {
+                            found = false;
+                            break;
+                        }
+                    }
+                }
+                if (found) {
+                    sx[count] = x;
+                    sy[count] = y;
+                    grid[cy * cells + cx] = count;
+                    active[actives++] = count;
+                    count++;
+                }
+            }
+            if (!found) {
+                active[a] = active[--actives];
+            }
+        }
+    }
+
+    private static int cell(double position, double min, double cellSize) {
+        return (int) ((position - min) / cellSize);
+    }
+}
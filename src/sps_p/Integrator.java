@@ -0,0 +1,36 @@
+package sps_p;
+
+/**
+ * Advance the positions of particles by one step of (dot)ri = Σ(i!=j) (kij|Rij|^(-1) - |Rij|^(-2)) * ^Rij.
+ * The right-hand side is calculated by ForceKernel at any positions, so multi-stage methods can evaluate it at
+ * intermediate positions.
+ */
+interface Integrator {
+    /**
+     * Advance x and y of the store by one step, and write the average velocity over the step, that is the
+     * displacement divided by the time step, into vx and vy. Positions are not moved into a periodic boundary here.
+     *
+     * @param store  The positions and velocities of particles.
+     * @param kernel The kernel to calculate (dot)ri.
+     * @return The time step used in this step.
+     */
+    double step(ParticleStore store, ForceKernel kernel);
+
+    /**
+     * @return The values which change while steps are calculated, which Checkpoint saves. Empty by default.
+     */
+    default double[] getState() {
+        return new double[0];
+    }
+
+    /**
+     * Restore the values returned by getState().
+     *
+     * @param state The values returned by getState() of an integrator of the same class.
+     */
+    default void setState(double[] state) {
+        if (state.length != 0) {
+            throw new IllegalArgumentException(getClass().getSimpleName() + " has no state, but got " + state.length + " values");
+        }
+    }
+}
@@ -1,11 +1,32 @@
 package sps_p;
 
+import sps_p.utils.Arguments;
+
+import java.io.IOException;
+
 /**
  * Entry point for this program. Just create an environment and run it.
+ * With "--headless", run a simulation without any window instead. See Batch for its options.
+ * With "--sweep", run simulations for many parameters without any window. See Sweep for its options.
+ * With "--drift", compare a run in float with the same run in double. See DriftReport for its options.
  */
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Arguments arguments = new Arguments(args);
+        if (arguments.has("sweep")) {
+            new Sweep(arguments).run();
+            return;
+        }
+        if (arguments.has("drift")) {
+            new DriftReport(arguments).run();
+            return;
+        }
+        if (arguments.has("headless")) {
+            new Batch(arguments).run();
+            return;
+        }
+
         Environment env = new Environment(800, 800, 50, 2);
         env.run();
     }
-}
\ No newline at end of file
+}
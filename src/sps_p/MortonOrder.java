@@ -0,0 +1,179 @@
+package sps_p;
+
+import java.util.Arrays;
+
+/**
+ * Move particles in ParticleStore into the order along a Z-order (Morton) curve, so particles which are close in space
+ * are also close in memory. Kernels which visit neighbors, like CellListForceKernel, then read a few cache lines for
+ * a cell instead of one line per particle.
+ * <p>
+ * The space is divided into a grid of 2^16 x 2^16 squares, which covers the bounding box of particles in an open
+ * boundary and the space from 0 to CYCLE_L in a periodic one. The key of a particle is the bits of its square on the
+ * 2 axes interleaved, and particles are sorted by the keys with radix sort. The sort is stable, so the order only
+ * depends on positions and the previous order, and a run which moves particles at the same steps is repeatable.
+ * <p>
+ * Positions, velocities, types and ids of particles are moved together, so everything which reads a slot sees the same
+ * particle. ParticleStore.ids keeps the permutation, so trajectories and triads are still written by ids.
+ * This doesn't allocate any object after the first call.
+ */
+class MortonOrder {
+    private static final int BITS = 16;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private int[] keys = new int[0];
+    private int[] slots = new int[0];
+    private int[] tmpKeys = new int[0];
+    private int[] tmpSlots = new int[0];
+    private int[] counts = new int[RADIX];
+    private int[] tmpInts = new int[0];
+    private double[] tmpDoubles = new double[0];
+
+    /**
+     * Sort particles along the Z-order curve.
+     *
+     * @param store    Positions, velocities and ids of particles.
+     * @param types    The type of each slot, which is moved with particles.
+     * @param boundary The boundary, which decides the space covered by the grid.
+     */
+    void sort(ParticleStore store, int[] types, Boundary boundary) {
+        int num = store.num;
+        ensureCapacity(num);
+        double[] x = store.x;
+        double[] y = store.y;
+
+        double minX, minY, size;
+        if (boundary == Boundary.PERIODIC) {
+            minX = 0;
+            minY = 0;
+            size = SimulationEngine.CYCLE_L;
+        } else {
+            minX = Double.POSITIVE_INFINITY;
+            minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < num; i++) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+            // Squares of the grid are square, so the larger side of the box decides their size.
+            size = Math.max(maxX - minX, maxY - minY);
+        }
+        double scale = size > 0 ? (1 << BITS) / size : 0;
+        for (int i = 0; i < num; i++) {
+            keys[i] = interleave(square((x[i] - minX) * scale), square((y[i] - minY) * scale));
+            slots[i] = i;
+        }
+        radixSort(num);
+        permute(store, types);
+    }
+
+    /**
+     * Move particles back into the order of ids, where the slot of each particle is its id.
+     *
+     * @param store Positions, velocities and ids of particles.
+     * @param types The type of each slot, which is moved with particles.
+     */
+    void sortById(ParticleStore store, int[] types) {
+        int num = store.num;
+        ensureCapacity(num);
+        for (int s = 0; s < num; s++) {
+            slots[store.ids[s]] = s;
+        }
+        permute(store, types);
+    }
+
+    /**
+     * Sort |slots| by |keys| from the lowest RADIX_BITS bits to the highest ones. Each pass is a stable counting sort.
+     */
+    private void radixSort(int num) {
+        for (int shift = 0; shift < 2 * BITS; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < num; i++) {
+                counts[(keys[i] >>> shift) & (RADIX - 1)]++;
+            }
+            for (int r = 0, start = 0; r < RADIX; r++) {
+                int count = counts[r];
+                counts[r] = start;
+                start += count;
+            }
+            for (int i = 0; i < num; i++) {
+                int to = counts[(keys[i] >>> shift) & (RADIX - 1)]++;
+                tmpKeys[to] = keys[i];
+                tmpSlots[to] = slots[i];
+            }
+            int[] swap = keys;
+            keys = tmpKeys;
+            tmpKeys = swap;
+            swap = slots;
+            slots = tmpSlots;
+            tmpSlots = swap;
+        }
+    }
+
+    /**
+     * Move the particle in the slot slots[s] into the slot s for all arrays of particles.
+     */
+    private void permute(ParticleStore store, int[] types) {
+        permute(store.x, store.num);
+        permute(store.y, store.num);
+        permute(store.vx, store.num);
+        permute(store.vy, store.num);
+        permute(store.ids, store.num);
+        permute(types, store.num);
+        store.sorts++;
+    }
+
+    private void permute(double[] values, int num) {
+        for (int s = 0; s < num; s++) {
+            tmpDoubles[s] = values[slots[s]];
+        }
+        System.arraycopy(tmpDoubles, 0, values, 0, num);
+    }
+
+    private void permute(int[] values, int num) {
+        for (int s = 0; s < num; s++) {
+            tmpInts[s] = values[slots[s]];
+        }
+        System.arraycopy(tmpInts, 0, values, 0, num);
+    }
+
+    private void ensureCapacity(int num) {
+        if (keys.length < num) {
+            keys = new int[num];
+            slots = new int[num];
+            tmpKeys = new int[num];
+            tmpSlots = new int[num];
+            tmpInts = new int[num];
+            tmpDoubles = new double[num];
+        }
+    }
+
+    /**
+     * @param position The position in units of squares.
+     * @return The index of the square on the axis, from 0 to 2^BITS - 1.
+     */
+    private static int square(double position) {
+        return (int) Math.max(0, Math.min((1 << BITS) - 1, position));
+    }
+
+    /**
+     * Interleave the lower 16 bits of |x| and |y|, so bit k of |x| becomes bit 2k and bit k of |y| becomes bit 2k + 1.
+     */
+    static int interleave(int x, int y) {
+        return spread(x) | (spread(y) << 1);
+    }
+
+    /**
+     * Insert a zero bit after each of the lower 16 bits.
+     */
+    private static int spread(int v) {
+        v &= 0xFFFF;
+        v = (v | (v << 8)) & 0x00FF00FF;
+        v = (v | (v << 4)) & 0x0F0F0F0F;
+        v = (v | (v << 2)) & 0x33333333;
+        v = (v | (v << 1)) & 0x55555555;
+        return v;
+    }
+}
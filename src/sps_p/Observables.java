@@ -0,0 +1,92 @@
+package sps_p;
+
+/**
+ * The center of gravity, X, and V of a swarm at one step. SimulationEngine writes them into one record at most once
+ * per step, so viewers and batch runs which read them at the same step share the result.
+ * <p>
+ * rg = N^(-1) * Σ(N, i=1)ri
+ * X = (N^(-1) * Σ(N, i=1)|ri - rg|)^(-1)
+ * V = N^(-1) * Σ(N, i=1)|ri(dot)-rg(dot)|
+ * X converges to zero when at least one of the particles moves an infinite distance from the center of gravity.
+ * V converges to zero when the relative velocities of all particles with respect to the center of gravity converge
+ * to zero.
+ * <p>
+ * All of them are calculated by 2 passes over particles. The first one sums positions and velocities, and the second
+ * one sums distances from rg and rg(dot).
+ */
+class Observables {
+    /**
+     * The step of these values. -1 means they are not calculated yet.
+     */
+    int count = -1;
+
+    /**
+     * rg, the position of the center of gravity.
+     */
+    double gx;
+    double gy;
+
+    /**
+     * rg(dot), the velocity of the center of gravity.
+     */
+    double vgx;
+    double vgy;
+
+    /**
+     * The reciprocal of the average of distance from the gravity.
+     */
+    double x;
+
+    /**
+     * The average of relative speed with the gravity, multiplied by the time step of the last step. So V is the
+     * average displacement per step, which the thresholds of RegimeDetector are based on.
+     */
+    double v;
+
+    /**
+     * Calculate all values from particles.
+     *
+     * @param store    Positions and velocities of particles.
+     * @param boundary The boundary, which is used for distances between positions. Velocities are not imaged.
+     * @param count    The step of |store|.
+     * @param dt       The time step of the last step, which V is multiplied by.
+     */
+    void compute(ParticleStore store, Boundary boundary, int count, double dt) {
+        int n = store.num;
+        double[] px = store.x;
+        double[] py = store.y;
+        double[] vx = store.vx;
+        double[] vy = store.vy;
+
+        double sumX = 0, sumY = 0, sumVX = 0, sumVY = 0;
+        for (int i = 0; i < n; i++) {
+            sumX += px[i];
+            sumY += py[i];
+            sumVX += vx[i];
+            sumVY += vy[i];
+        }
+        gx = sumX / n;
+        gy = sumY / n;
+        vgx = sumVX / n;
+        vgy = sumVY / n;
+
+        boolean periodic = boundary == Boundary.PERIODIC;
+        double sumDistance = 0, sumSpeed = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = px[i] - gx;
+            double dy = py[i] - gy;
+            if (periodic) {
+                dx = Boundary.minimumImage(dx);
+                dy = Boundary.minimumImage(dy);
+            }
+            sumDistance += Math.sqrt(dx * dx + dy * dy);
+
+            double dvx = vx[i] - vgx;
+            double dvy = vy[i] - vgy;
+            sumSpeed += Math.sqrt(dvx * dvx + dvy * dvy);
+        }
+        x = n / sumDistance;
+        v = sumSpeed / n * dt;
+        this.count = count;
+    }
+}
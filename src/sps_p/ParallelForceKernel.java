@@ -0,0 +1,153 @@
+package sps_p;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculate all pairs on a ForkJoinPool.
+ * Rows i are divided into blocks which have about the same number of pairs, and each block adds its contributions
+ * into its own accumulator. Then the accumulators are summed in the order of blocks for each particle.
+ * The blocks don't depend on the number of threads, so the results are bit-identical regardless of the pool size.
+ */
+class ParallelForceKernel extends ForceKernel {
+    /**
+     * The maximum number of blocks. The memory of accumulators is 2 * MAX_BLOCKS * N doubles.
+     */
+    private static final int MAX_BLOCKS = 64;
+
+    /**
+     * The number of particles per block when N is small.
+     */
+    private static final int MIN_ROWS = 16;
+
+    /**
+     * The number of particles which a task sums up in the reduction.
+     */
+    private static final int REDUCE_CHUNK = 1024;
+
+    private ForkJoinPool pool;
+
+    /**
+     * The block b has rows from bounds[b] to bounds[b + 1].
+     */
+    private int[] bounds;
+    private double[][] accX;
+    private double[][] accY;
+
+    /**
+     * @param engine The engine which has parameter K and a boundary.
+     * @param pool   The pool to run blocks. ForkJoinPool.commonPool() can be used.
+     */
+    ParallelForceKernel(SimulationEngine engine, ForkJoinPool pool) {
+        super(engine);
+        this.pool = pool;
+    }
+
+    @Override
+    void compute(double[] x, double[] y, double[] fx, double[] fy) {
+        int n = x.length;
+        if (bounds == null || bounds[bounds.length - 1] != n) {
+            initBlocks(n);
+        }
+        pool.invoke(new BlockTask(0, bounds.length - 1, x, y));
+        pool.invoke(new ReduceTask(0, n, fx, fy));
+    }
+
+    /**
+     * Divide rows into blocks. Row i has N - 1 - i pairs, so the earlier blocks have fewer rows.
+     *
+     * @param n The number of particles.
+     */
+    private void initBlocks(int n) {
+        int blocks = Math.max(1, Math.min(MAX_BLOCKS, n / MIN_ROWS));
+        long total = (long) n * (n - 1) / 2;
+        bounds = new int[blocks + 1];
+        int row = 0;
+        for (int b = 1; b < blocks; b++) {
+            long target = total * b / blocks;
+            while (row < n && pairsBefore(row, n) < target) {
+                row++;
+            }
+            bounds[b] = row;
+        }
+        bounds[blocks] = n;
+        accX = new double[blocks][n];
+        accY = new double[blocks][n];
+    }
+
+    /**
+     * @return The number of pairs (i, j) such that i < row and i < j.
+     */
+    private static long pairsBefore(long row, long n) {
+        return row * (n - 1) - row * (row - 1) / 2;
+    }
+
+    /**
+     * Calculate blocks from |from| to |to|.
+     */
+    private class BlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int from, to;
+        private double[] x, y;
+
+        BlockTask(int from, int to, double[] x, double[] y) {
+            this.from = from;
+            this.to = to;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BlockTask(from, mid, x, y), new BlockTask(mid, to, x, y));
+                return;
+            }
+            int start = bounds[from];
+            Arrays.fill(accX[from], start, x.length, 0.0);
+            Arrays.fill(accY[from], start, x.length, 0.0);
+            accumulateRows(start, bounds[from + 1], x, y, accX[from], accY[from]);
+        }
+    }
+
+    /**
+     * Sum up accumulators of blocks in the order of blocks for particles from |from| to |to|.
+     * Block b only writes particles after bounds[b].
+     */
+    private class ReduceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int from, to;
+        private double[] fx, fy;
+
+        ReduceTask(int from, int to, double[] fx, double[] fy) {
+            this.from = from;
+            this.to = to;
+            this.fx = fx;
+            this.fy = fy;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > REDUCE_CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ReduceTask(from, mid, fx, fy), new ReduceTask(mid, to, fx, fy));
+                return;
+            }
+            double sumX, sumY;
+            for (int i = from; i < to; i++) {
+                sumX = 0.0;
+                sumY = 0.0;
+                for (int b = 0; b < bounds.length - 1 && bounds[b] <= i; b++) {
+                    sumX += accX[b][i];
+                    sumY += accY[b][i];
+                }
+                fx[i] = sumX;
+                fy[i] = sumY;
+            }
+        }
+    }
+}
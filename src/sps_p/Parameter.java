@@ -11,16 +11,29 @@ import java.util.List;
 abstract class Parameter {
     int pNum;
     int pType;
+    SimulationEngine engine;
     Swarm swarm;
 
     // TODO: Replace to BigDecimal because "double" type is unstable.
     double[][] params;
+
+    /**
+     * The type of each particle. The index is the index of a particle.
+     */
+    int[] types;
+
+    /**
+     * |params| in row-major order. kij = flatParams[types[i] * pType + types[j]].
+     * This must be updated by updateFlatParams() whenever |params| is changed.
+     */
+    double[] flatParams;
+
     private JTextArea paramsText;
 
-    Parameter(int num, int type, Swarm swarm) {
+    Parameter(int num, int type, SimulationEngine engine) {
         this.pNum = num;
         this.pType = type;
-        this.swarm = swarm;
+        this.engine = engine;
         switch (pType) {
             case 2:
                 this.params = init2x2();
@@ -31,7 +44,19 @@ abstract class Parameter {
             default:
                 this.params = random();
         }
+        this.types = new int[num];
+        this.flatParams = new double[type * type];
+        initTypes();
         roundingParams();
+    }
+
+    /**
+     * Put UIs for parameters on sps_p.Swarm. This is not called when the engine runs without a window.
+     *
+     * @param swarm The viewer which shows parameters.
+     */
+    void attach(Swarm swarm) {
+        this.swarm = swarm;
         initParamsLayout(); // Set |paramsText| in this function.
     }
 
@@ -51,7 +76,7 @@ abstract class Parameter {
         double tmp;
         for (int i = 0; i < pType; i++) {
             for (int j = 0; j < pType; j++) {
-                tmp = -2.0 + Math.random() * 4.0;
+                tmp = -2.0 + engine.getRandom().nextDouble() * 4.0;
                 tmp *= 10;
                 tmp = Math.floor(tmp);
                 tmp /= 10;
@@ -62,59 +87,53 @@ abstract class Parameter {
     };
 
     /**
-     * Always return 0 because the index of first type starts 0.
+     * Return the index of starting |type| when particles are divided into contiguous groups of types.
+     * Each type has (the number of remaining particles) / (the number of remaining types) particles, so the earlier
+     * types have fewer particles when |pNum| is not divisible by |pType|.
+     * Ex. n=4, type=3 : {0}, {1}, {2, 3}
+     * Ex. n=5, type=3 : {0}, {1, 2}, {3, 4}
+     * Ex. n=6, type=3 : {0, 1}, {2, 3}, {4, 5}
      *
-     * @return 0.
+     * @param type The type of particles. |pType| returns |pNum|.
+     * @return the index of starting |type|.
      */
-    int getFirstTypeIndex() {
-        return 0;
+    int getTypeStart(int type) {
+        int start = 0;
+        for (int t = 1; t <= type; t++) {
+            start += (pNum - start) / (pType - t + 1);
+        }
+        return start;
     }
 
     /**
-     * Return the index of starting second type. The result of |pNum / pType| is round-down.
-     * To be precise, Java refers to this as rounding toward zero.
+     * Return the type of particle.
      *
-     * @return the index of starting second type.
+     * @param i The index of particles.
+     * @return The type of particle.
      */
-    int getSecondTypeIndex() {
-        return pNum / pType;
+    int getType(int i) {
+        return types[i];
     }
 
-    /**
-     * Return the index of starting third type. Return |pNum| when pType is 2.
-     * In the case 3,
-     * Ex. n=4 : {0}, {1}, {2, 3} => return 2
-     * Ex. n=5 : {0}, {1, 2}, {3, 4} => return 3
-     * Ex. n=6 : {0, 1}, {2, 3}, {4, 5} => return 4
-     *
-     * @return the index of starting third type.
-     */
-    int getThirdTypeIndex() {
-        switch (pType) {
-            case 2:
-                return pNum;
-            case 3:
-                int s = getSecondTypeIndex();
-                int r = pNum - s;
-                return s + r / 2;
-            default:
-                return pNum;
-        }
+    int[] getTypes() {
+        return types;
     }
 
     /**
-     * Return the type of particle.
+     * Assign a type to each particle. Particles of the same type don't need to be next to each other.
      *
-     * @param i The index of particles.
-     * @return The type of particle.
+     * @param types The type of each particle, which is from 0 to |pType| - 1.
      */
-    int getType(int i) {
-        if (i < getSecondTypeIndex()) {
-            return 0;
-        } else if (i < getThirdTypeIndex()) {
-            return 1;
+    void setTypes(int[] types) {
+        if (types.length != pNum) {
+            throw new IllegalArgumentException("types needs " + pNum + " values but got " + types.length);
+        }
+        for (int type : types) {
+            if (type < 0 || type >= pType) {
+                throw new IllegalArgumentException("type must be from 0 to " + (pType - 1) + ": " + type);
+            }
         }
-        return 2;
+        System.arraycopy(types, 0, this.types, 0, pNum);
     }
 
     /**
@@ -125,7 +144,7 @@ abstract class Parameter {
      * @return sps_p.ParameterKij.
      */
     double getKParam(int i, int j) {
-        return params[getType(i)][getType(j)];
+        return flatParams[types[i] * pType + types[j]];
     }
 
     double[][] getParams() {
@@ -146,6 +165,37 @@ abstract class Parameter {
         roundingParams();
     }
 
+    /**
+     * Set parameter K without rounding, for example to restore a checkpoint.
+     *
+     * @param params Parameter K of pType x pType.
+     */
+    void restoreParams(double[][] params) {
+        this.params = params;
+        updateFlatParams();
+    }
+
+    /**
+     * Copy |params| into |flatParams|.
+     */
+    void updateFlatParams() {
+        for (int i = 0; i < pType; i++) {
+            System.arraycopy(params[i], 0, flatParams, pType * i, pType);
+        }
+    }
+
+    /**
+     * Divide particles into contiguous groups of types.
+     */
+    private void initTypes() {
+        for (int t = 0; t < pType; t++) {
+            int end = getTypeStart(t + 1);
+            for (int i = getTypeStart(t); i < end; i++) {
+                types[i] = t;
+            }
+        }
+    }
+
     /**
      * Round the second decimal place of current params.
      * Ex. 21.8355 -> 21.8
@@ -157,6 +207,7 @@ abstract class Parameter {
                 params[i][j] = Double.parseDouble(String.format("%.1f", params[i][j]));
             }
         }
+        updateFlatParams();
     }
 
     /**
@@ -183,18 +234,11 @@ abstract class Parameter {
     }
 
     /**
-     * Create new JTextArea that shows parameters. This should be called when you want to update parameters based on
-     * the content in text area that you input.
-     * The order of parameters is {i, j} =
-     * {0, 0}, {0, 1}
-     * {1, 0}, {1, 1}
-     * 0 means the index of particle < 2/N.
-     * 1 means the index of particle >= 2/N.
+     * Format |params| for the text area. See createNewParamsText() for the order.
      *
-     * @return New JTextArea that shows parameters.
+     * @return The parameters, one row of |params| per line.
      */
-    private JTextArea createNewParamsText() {
-        JTextArea newParamsText;
+    private String formatParams() {
         StringBuilder str = new StringBuilder();
         for (int i = 0; i < pType; i++) {
             for (int j = 0; j < pType; j++) {
@@ -208,7 +252,23 @@ abstract class Parameter {
             }
             str.append("\n");
         }
-        newParamsText = new JTextArea(str.toString());
+        return str.toString();
+    }
+
+    /**
+     * Create new JTextArea that shows parameters. This should be called when you want to update parameters based on
+     * the content in text area that you input.
+     * The order of parameters is {i, j} =
+     * {0, 0}, {0, 1}
+     * {1, 0}, {1, 1}
+     * 0 means the index of particle < 2/N.
+     * 1 means the index of particle >= 2/N.
+     *
+     * @param text The parameters made by formatParams().
+     * @return New JTextArea that shows parameters.
+     */
+    private JTextArea createNewParamsText(String text) {
+        JTextArea newParamsText = new JTextArea(text);
         newParamsText.setFont(new Font("OpenSans", Font.PLAIN, 16));
         newParamsText.setBounds(650, 40, 120, 60);
         newParamsText.setEditable(true);
@@ -218,11 +278,16 @@ abstract class Parameter {
 
     /**
      * Remove previous |paramsText| from sps_p.Swarm JPanel and add new one on sps_p.Swarm JPanel.
+     * This is called on the thread of the engine after |params| changed. The text is made from |params| here and shown
+     * on the event dispatch thread.
      */
-    void updateParamsText() {
-        swarm.remove(paramsText);
-        paramsText = createNewParamsText();
-        swarm.add(paramsText);
+    void postParamsText() {
+        String text = formatParams();
+        SwingUtilities.invokeLater(() -> {
+            swarm.remove(paramsText);
+            paramsText = createNewParamsText(text);
+            swarm.add(paramsText);
+        });
     }
 
     /**
@@ -248,26 +313,30 @@ abstract class Parameter {
     private void initParamsLayout() {
         swarm.setLayout(null);
         swarm.add(getTitle());
-        paramsText = createNewParamsText();
+        paramsText = createNewParamsText(formatParams());
         swarm.add(paramsText);
 
         JButton updateButton = createButton("Update", 650, 110, 120, 30);
         updateButton.addActionListener(e -> {
             List<String> pt = parseParamsText();
-            setParams(pt);
-            updateParamsText();
+            swarm.post(() -> {
+                setParams(pt);
+                postParamsText();
+            });
             swarm.reset();
-            this.reset();
+            swarm.post(this::reset);
         });
         swarm.add(updateButton);
 
         JButton randomButton = createButton("Random", 650, 140, 120, 30);
         randomButton.addActionListener(e -> {
-            double[][] rnd = random();
-            setParams(rnd);
-            updateParamsText();
+            // random() reads the generator of the engine, so it runs on the thread of the engine too.
+            swarm.post(() -> {
+                setParams(random());
+                postParamsText();
+            });
             swarm.reset();
-            this.reset();
+            swarm.post(this::reset);
         });
         swarm.add(randomButton);
     }
@@ -1,11 +1,7 @@
 package sps_p;
 
-import sps_p.utils.LogPlot;
-import sps_p.utils.Pair;
-
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
 
 /**
  * Parameters are defined by using A, B, P, and M which is written in Kano's thesis(Mathematical Analysis for Non-reciprocal-interaction-based Model of Collective Behavior, 2017).
@@ -17,96 +13,68 @@ import java.util.List;
  * }
  */
 public class ParameterKabpm extends Parameter {
+    static final double DEFAULT_KA = 0.8;
+    static final double DEFAULT_KB = 0.4;
+    static final double DEFAULT_KP = 0.6;
+    static final double DEFAULT_KM = -0.8;
+
     // TODO: Replace to BigDecimal because "double" type is unstable.
-    private static double kA = 0.8;
-    private static double kB = 0.4;
-    private static double kP = 0.6;
-    private static double kM = -0.8;
+    // These are set in init2x2(), which is called from the constructor of Parameter before initializers of this class,
+    // so they must not have initializers.
+    private double kA;
+    private double kB;
+    private double kP;
+    private double kM;
 
     private JPanel textA;
     private JPanel textB;
     private JPanel textP;
     private JPanel textM;
 
-    private LogPlot plot;
-
     /**
-     * Initialize this class itself and UIs.
+     * Initialize this class itself.
      *
      * @param num
      * @param type
-     * @param swarm
-     */
-    ParameterKabpm(int num, int type, Swarm swarm) {
-        super(num, type, swarm);
-        initABPMLayout(); // Set all JPanels and a Button in this function.
-        initLogPlot(); // Set LogPlot up.
-    }
-
-    /**
-     * Calculate the position of the center of gravity.
-     * rg = N^(-1) * Σ(N, i=1)ri
-     *
-     * @param particles The list of particles.
-     * @return The position of the center of gravity.
+     * @param engine
      */
-    Pair<Double> getGravity(List<Particle> particles) {
-        double sumX = 0;
-        double sumY = 0;
-        for (Particle p : particles) {
-            sumX += p.x;
-            sumY += p.y;
-        }
-        return new Pair<>(sumX / pNum, sumY / pNum);
+    ParameterKabpm(int num, int type, SimulationEngine engine) {
+        super(num, type, engine);
     }
 
     /**
-     * X = (N^(-1) * Σ(N, i=1)|ri - rg|)^(-1)
-     * rg = N^(-1) * Σ(N, i=1)ri
-     * rg denotes the position of the center of gravity.
-     * X converges to zero when at least one of the particles moves an infinite distance from the center of gravity.
+     * Initialize UIs on sps_p.Swarm.
      *
-     * @param particles The list of particles.
-     * @return The reciprocal of the average of distance from the gravity.
+     * @param swarm The viewer which shows parameters.
      */
-    double getX(List<Particle> particles) {
-        double sum = 0;
-        Pair<Double> rg = getGravity(particles);
-        for (Particle ri : particles) {
-            sum += swarm.distance(ri.x, ri.y, rg.x, rg.y);
-        }
-        return Math.pow(sum / pNum, -1.0);
+    @Override
+    void attach(Swarm swarm) {
+        super.attach(swarm);
+        initABPMLayout(); // Set all JPanels and a Button in this function.
     }
 
     /**
-     * V = N^(-1) * Σ(N, i=1)|ri(dot)-rg(dot)|
-     * V converges to zero when the relative velocities of all particles with respect to the center of gravity converge to zero.
+     * Set parameter K by A, B, P, and M. Unlike setParams(), values are not rounded, so a fine grid of parameters can
+     * be examined.
      *
-     * @param timeEvolution The list of the time evolution for each ri.
-     * @param curG          The position of the center of gravity in current step.
-     * @param nextG         The position of the center of gravity in next step.
-     * @return The average of relative speed with the gravity.
+     * @param a Ka.
+     * @param b Kb.
+     * @param p Kp.
+     * @param m Km.
      */
-    double getV(List<Pair<Double>> timeEvolution, Pair<Double> curG, Pair<Double> nextG) {
-        Pair<Double> dotrg = new Pair<>(nextG.x - curG.x, nextG.y - curG.y);
-        double sum = 0.0;
-        for (Pair<Double> dotri : timeEvolution) {
-            sum += swarm.distance(dotri.x, dotri.y, dotrg.x, dotrg.y);
+    void setABPM(double a, double b, double p, double m) {
+        if (pType != 2) {
+            throw new IllegalStateException("A, B, P, and M are defined only for 2 types: " + pType);
         }
-        return sum / pNum;
-    }
-
-    /**
-     * X = (N^(-1) * Σ(N, i=1)|ri - rg|)^(-1), rg = N^(-1) * Σ(N, i=1)ri
-     * V = N^(-1) * Σ(N, i=1)|ri(dot)-rg(dot)|
-     * x = log10(10^3*X+1)
-     * y = log10(10^3*V+1)
-     *
-     * @param x The reciprocal of the average of distance from the gravity.
-     * @param v The average of relative speed with the gravity.
-     */
-    void addPoint(double x, double v) {
-        plot.addPoint(Math.log10(1000 * x + 1), Math.log10(1000 * v + 1));
+        kA = a;
+        kB = b;
+        kP = p;
+        kM = m;
+        params = new double[][]{
+                {a, p + m},
+                {p - m, b}
+        };
+        updateFlatParams();
     }
 
     private JPanel createNewTextArea(String labelText, double val, int x, int y) {
@@ -127,15 +95,6 @@ public class ParameterKabpm extends Parameter {
         return panel;
     }
 
-    /**
-     * Should be called once in this constructor. Initialize a LogPlot for X and V parameters.
-     */
-    private void initLogPlot() {
-        plot = new LogPlot("log10(10^3*X+1)", "log10(10^3*V+1)");
-        plot.setBounds(10, 490, 260, 260);
-        swarm.add(plot);
-    }
-
     /**
      * Should be called once in this constructor. Initialize all JPanel for ABPM parameters and set them up.
      */
@@ -155,14 +114,13 @@ public class ParameterKabpm extends Parameter {
             double b = Double.parseDouble(((JTextField) textB.getComponent(1)).getText());
             double p = Double.parseDouble(((JTextField) textP.getComponent(1)).getText());
             double m = Double.parseDouble(((JTextField) textM.getComponent(1)).getText());
-            double[][] newParams = {
-                    {a, p + m},
-                    {p - m, b}
-            };
-            super.setParams(newParams);
-            super.updateParamsText();
+            swarm.post(() -> {
+                setABPM(a, b, p, m);
+                super.setParams(params); // Round parameters as the other buttons do.
+                super.postParamsText();
+            });
             swarm.reset();
-            this.reset();
+            swarm.post(this::reset);
         });
         swarm.add(updateButton);
     }
@@ -180,22 +138,28 @@ public class ParameterKabpm extends Parameter {
      */
     @Override
     double[][] init2x2() {
+        kA = DEFAULT_KA;
+        kB = DEFAULT_KB;
+        kP = DEFAULT_KP;
+        kM = DEFAULT_KM;
         return new double[][]{
                 {kA, kP + kM},
                 {kP - kM, kB}
         };
     }
 
+    /**
+     * A, B, P, and M are defined only for 2 types of particles, so 3 types get random parameter K like more types.
+     *
+     * @return Randomized parameter K.
+     */
     @Override
     double[][] init3x3() {
-        return new double[0][];
+        return random();
     }
 
-    /**
-     * Reset log log plot.
-     */
     @Override
     void reset() {
-        plot.clearAll();
+        // Nothing for Kabpm parameter. Swarm clears its log log plot.
     }
 }
@@ -4,8 +4,8 @@ package sps_p;
  * Child parameter class. Parameter K is initialized in hard-coded.
  */
 public class ParameterKij extends Parameter {
-    ParameterKij(int num, int type, Swarm swarm) {
-        super(num, type, swarm);
+    ParameterKij(int num, int type, SimulationEngine engine) {
+        super(num, type, engine);
     }
 
     /**
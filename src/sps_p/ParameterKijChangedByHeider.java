@@ -7,8 +7,8 @@ package sps_p;
 public class ParameterKijChangedByHeider extends Parameter {
     private int paramChangedCount = 0;
 
-    ParameterKijChangedByHeider(int num, int type, Swarm swarm) {
-        super(num, type, swarm);
+    ParameterKijChangedByHeider(int num, int type, SimulationEngine engine) {
+        super(num, type, engine);
     }
 
     public int getParamChangedCount() {
@@ -31,25 +31,27 @@ public class ParameterKijChangedByHeider extends Parameter {
      */
     public void flipKParamSimpleHeider(double[][] kSums) {
         if (kSums[0][1] * kSums[1][2] * kSums[2][0] < 0) {
-            int base = (int) (Math.random() * 3);
+            int base = engine.getRandom().nextInt(3);
             params[base][base + 1 > 2 ? 0 : base + 1] = -params[base][base + 1 > 2 ? 0 : base + 1];
             System.out.println("1: Flip k param " + base);
+            updateFlatParams();
             return;
         }
 
         if (kSums[0][2] * kSums[2][1] * kSums[1][0] < 0) {
-            int base = (int) (Math.random() * 3);
+            int base = engine.getRandom().nextInt(3);
             params[base][base + 1 > 2 ? 0 : base + 1] = -params[base][base + 1 > 2 ? 0 : base + 1];
             System.out.println("2: Flip k param " + base);
+            updateFlatParams();
             return;
         }
     }
 
     public void flipKParamHeider(double[][] kSums) {
-        int perceiver = (int) (Math.random() * 3);
-        int other = (int) (Math.random() * 3);
+        int perceiver = engine.getRandom().nextInt(3);
+        int other = engine.getRandom().nextInt(3);
         while (other == perceiver) {
-            other = (int) (Math.random() * 3);
+            other = engine.getRandom().nextInt(3);
         }
         int x = 3 - perceiver - other;
 
@@ -57,13 +59,14 @@ public class ParameterKijChangedByHeider extends Parameter {
             paramChangedCount += 1;
             params[perceiver][other] = -params[perceiver][other];
         }
+        updateFlatParams();
     }
 
     public void changeKParamHeider(double[][] kSums) {
-        int perceiver = (int) (Math.random() * 3);
-        int other = (int) (Math.random() * 3);
+        int perceiver = engine.getRandom().nextInt(3);
+        int other = engine.getRandom().nextInt(3);
         while (other == perceiver) {
-            other = (int) (Math.random() * 3);
+            other = engine.getRandom().nextInt(3);
         }
         int x = 3 - perceiver - other;
         double offset = 0.1;
@@ -76,6 +79,7 @@ public class ParameterKijChangedByHeider extends Parameter {
                 params[perceiver][other] -= offset;
             }
         }
+        updateFlatParams();
     }
 
     public void balanceKParamHeiderHelper(int x, int y, double kDiff, boolean isPlus) {
@@ -88,13 +92,14 @@ public class ParameterKijChangedByHeider extends Parameter {
         } else {
             params[x][y] = Math.max(-2.0, params[x][y] - kDiff);
         }
+        updateFlatParams();
     }
 
     public void balanceKParamHeider(double[][] kSums) {
-        int perceiver = (int) (Math.random() * 3);
-        int other = (int) (Math.random() * 3);
+        int perceiver = engine.getRandom().nextInt(3);
+        int other = engine.getRandom().nextInt(3);
         while (other == perceiver) {
-            other = (int) (Math.random() * 3);
+            other = engine.getRandom().nextInt(3);
         }
         int x = 3 - perceiver - other;
         double kPO, kPX, kDiff;
@@ -139,10 +144,10 @@ public class ParameterKijChangedByHeider extends Parameter {
     }
 
     public void flipKParamNewcomb(double[][] kSums) {
-        int a = (int) (Math.random() * 3);
-        int b = (int) (Math.random() * 3);
+        int a = engine.getRandom().nextInt(3);
+        int b = engine.getRandom().nextInt(3);
         while (a == b) {
-            b = (int) (Math.random() * 3);
+            b = engine.getRandom().nextInt(3);
         }
         int x = 3 - a - b;
 
@@ -150,13 +155,14 @@ public class ParameterKijChangedByHeider extends Parameter {
             System.out.println("Flip k param " + a + " -> " + x + " : " + params[a][x]);
             params[a][x] = -params[a][x];
         }
+        updateFlatParams();
     }
 
     public void changeKParamNewcomb(double[][] kSums) {
-        int a = (int) (Math.random() * 3);
-        int b = (int) (Math.random() * 3);
+        int a = engine.getRandom().nextInt(3);
+        int b = engine.getRandom().nextInt(3);
         while (a == b) {
-            b = (int) (Math.random() * 3);
+            b = engine.getRandom().nextInt(3);
         }
         int x = 3 - a - b;
         double offset = 0.1;
@@ -169,13 +175,14 @@ public class ParameterKijChangedByHeider extends Parameter {
                 params[a][x] -= offset;
             }
         }
+        updateFlatParams();
     }
 
     public void memeNewcomb(double[][] kSums) {
-        int a = (int) (Math.random() * 3);
-        int b = (int) (Math.random() * 3);
+        int a = engine.getRandom().nextInt(3);
+        int b = engine.getRandom().nextInt(3);
         while (a == b) {
-            b = (int) (Math.random() * 3);
+            b = engine.getRandom().nextInt(3);
         }
         int x = 3 - a - b;
         double offset;
@@ -192,6 +199,7 @@ public class ParameterKijChangedByHeider extends Parameter {
                 params[b][x] += offset;
             }
         }
+        updateFlatParams();
     }
 
     @Override
@@ -366,7 +374,7 @@ public class ParameterKijChangedByHeider extends Parameter {
         double tmp;
         for (int i = 0; i < pType; i++) {
             for (int j = 0; j < pType; j++) {
-                tmp = -2.0 + Math.random() * 4.0;
+                tmp = -2.0 + engine.getRandom().nextDouble() * 4.0;
                 tmp *= 10;
                 tmp = Math.floor(tmp);
                 tmp /= 10;
@@ -0,0 +1,80 @@
+package sps_p;
+
+import sps_p.utils.Xoshiro256;
+
+/**
+ * Hold positions and time evolutions of all particles in primitive arrays instead of a list of Particle objects.
+ * The index of arrays is the slot of a particle. Slots are ids of particles until MortonOrder moves particles which are
+ * close in space next to each other, and |ids| tells which particle is in each slot.
+ */
+class ParticleStore {
+    final int num;
+
+    /**
+     * The positions of particles.
+     */
+    final double[] x;
+    final double[] y;
+
+    /**
+     * (dot)ri. The average velocity of ri over the last step, which is the displacement divided by the time step.
+     */
+    final double[] vx;
+    final double[] vy;
+
+    /**
+     * ids[s] is the id of the particle in the slot s.
+     */
+    final int[] ids;
+
+    /**
+     * The number of times MortonOrder moved particles to other slots, so anything kept for each slot, like neighbor
+     * lists, can tell that it is out of date.
+     */
+    int sorts = 0;
+
+    ParticleStore(int num) {
+        this.num = num;
+        this.x = new double[num];
+        this.y = new double[num];
+        this.vx = new double[num];
+        this.vy = new double[num];
+        this.ids = new int[num];
+        for (int i = 0; i < num; i++) {
+            ids[i] = i;
+        }
+    }
+
+    /**
+     * Copy the values of slots into the indexes of ids, for example to compare positions with ones before MortonOrder
+     * moved particles.
+     *
+     * @param values The values of slots, like |x|.
+     * @param out    The array to write the values in id order.
+     */
+    void copyById(double[] values, double[] out) {
+        for (int s = 0; s < num; s++) {
+            out[ids[s]] = values[s];
+        }
+    }
+
+    /**
+     * Initialize x, y positions of all particles which become between min and max.
+     *
+     * @param min    The minimum value of positions.
+     * @param max    The maximum value of positions.
+     * @param random The generator of the run.
+     */
+    void initPositions(int min, int max, Xoshiro256 random) {
+        for (int i = 0; i < num; i++) {
+            x[i] = init(min, max, random);
+            y[i] = init(min, max, random);
+            vx[i] = 0.0;
+            vy[i] = 0.0;
+        }
+    }
+
+    private double init(int min, int max, Xoshiro256 random) {
+        return min + random.nextDouble() * (max - min);
+    }
+}
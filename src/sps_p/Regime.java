@@ -0,0 +1,30 @@
+package sps_p;
+
+/**
+ * How a swarm behaves, which is judged from the time series of X and V by RegimeDetector.
+ */
+enum Regime {
+    /**
+     * Particles stopped moving relative to each other, so V is almost zero.
+     */
+    CONVERGED,
+    /**
+     * Particles keep moving, but X and V don't change any more. For example, clusters chase each other.
+     */
+    STEADY,
+    /**
+     * Particles fly apart, so X goes to zero.
+     */
+    DIVERGED,
+    /**
+     * None of them. The swarm is still changing.
+     */
+    MOVING;
+
+    /**
+     * @return True if the swarm doesn't change any more, so it is no use to calculate more steps.
+     */
+    boolean isSettled() {
+        return this != MOVING;
+    }
+}
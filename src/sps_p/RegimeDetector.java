@@ -0,0 +1,156 @@
+package sps_p;
+
+/**
+ * Judge the regime of a swarm from the latest |window| samples of X and V, so a run can stop as soon as the swarm
+ * settles. Samples should be added at a fixed interval of steps, and the regime is judged only after the window is
+ * full.
+ * <p>
+ * A window is DIVERGED when all X in it are less than |divergedX|, CONVERGED when all V in it are less than
+ * |convergedV|, and STEADY when the standard deviations of both X and V are at most |steady| times their means.
+ * X or V which isn't finite is DIVERGED at once.
+ */
+class RegimeDetector {
+    static final int DEFAULT_WINDOW = 20;
+    static final double DEFAULT_CONVERGED_V = 1e-5;
+    static final double DEFAULT_DIVERGED_X = 0.01;
+    static final double DEFAULT_STEADY = 1e-3;
+
+    private int window;
+    private double convergedV;
+    private double divergedX;
+    private double steady;
+
+    /**
+     * The ring buffers of samples. The next sample is written at |next|.
+     */
+    private double[] xs;
+    private double[] vs;
+    private int next = 0;
+    private int size = 0;
+
+    private Regime regime = Regime.MOVING;
+
+    RegimeDetector() {
+        this(DEFAULT_WINDOW, DEFAULT_CONVERGED_V, DEFAULT_DIVERGED_X, DEFAULT_STEADY);
+    }
+
+    /**
+     * @param window     The number of the latest samples to judge the regime.
+     * @param convergedV The threshold of V for CONVERGED.
+     * @param divergedX  The threshold of X for DIVERGED.
+     * @param steady     The threshold of the relative standard deviations of X and V for STEADY.
+     */
+    RegimeDetector(int window, double convergedV, double divergedX, double steady) {
+        if (window < 2) {
+            throw new IllegalArgumentException("window must be at least 2: " + window);
+        }
+        if (convergedV < 0 || divergedX < 0 || steady < 0) {
+            throw new IllegalArgumentException("Thresholds must not be negative: " + convergedV + ", " + divergedX + ", " + steady);
+        }
+        this.window = window;
+        this.convergedV = convergedV;
+        this.divergedX = divergedX;
+        this.steady = steady;
+        this.xs = new double[window];
+        this.vs = new double[window];
+    }
+
+    /**
+     * Add a sample and judge the regime again.
+     *
+     * @param x The latest X.
+     * @param v The latest V.
+     * @return The regime judged from the latest window. MOVING until the window is full.
+     */
+    Regime add(double x, double v) {
+        xs[next] = x;
+        vs[next] = v;
+        next = (next + 1) % window;
+        size = Math.min(size + 1, window);
+
+        if (!Double.isFinite(x) || !Double.isFinite(v)) {
+            regime = Regime.DIVERGED;
+        } else if (size < window) {
+            regime = Regime.MOVING;
+        } else if (max(xs) < divergedX) {
+            regime = Regime.DIVERGED;
+        } else if (max(vs) < convergedV) {
+            regime = Regime.CONVERGED;
+        } else if (isStationary(xs) && isStationary(vs)) {
+            regime = Regime.STEADY;
+        } else {
+            regime = Regime.MOVING;
+        }
+        return regime;
+    }
+
+    /**
+     * @return The regime judged by the last add().
+     */
+    Regime getRegime() {
+        return regime;
+    }
+
+    /**
+     * @return {next, size, regime, xs[window], vs[window]}, which Checkpoint saves, so a resumed run judges the same
+     * regime at the same step as a run without a stop.
+     */
+    double[] getState() {
+        double[] state = new double[3 + 2 * window];
+        state[0] = next;
+        state[1] = size;
+        state[2] = regime.ordinal();
+        System.arraycopy(xs, 0, state, 3, window);
+        System.arraycopy(vs, 0, state, 3 + window, window);
+        return state;
+    }
+
+    /**
+     * Restore the values returned by getState(). The ring buffers are restored as they are, since the order of samples
+     * in them changes the rounding of the mean.
+     *
+     * @param state The values returned by getState() of a detector with the same window.
+     */
+    void setState(double[] state) {
+        if (state.length != 3 + 2 * window) {
+            throw new IllegalArgumentException("RegimeDetector of window " + window + " needs " + (3 + 2 * window)
+                    + " values of state, but got " + state.length);
+        }
+        next = (int) state[0];
+        size = (int) state[1];
+        regime = Regime.values()[(int) state[2]];
+        System.arraycopy(state, 3, xs, 0, window);
+        System.arraycopy(state, 3 + window, vs, 0, window);
+    }
+
+    /**
+     * Forget all samples, for example after the positions are reset.
+     */
+    void clear() {
+        next = 0;
+        size = 0;
+        regime = Regime.MOVING;
+    }
+
+    private boolean isStationary(double[] samples) {
+        double mean = 0;
+        for (double s : samples) {
+            mean += s;
+        }
+        mean /= window;
+        double variance = 0;
+        for (double s : samples) {
+            variance += (s - mean) * (s - mean);
+        }
+        variance /= window;
+        return Math.sqrt(variance) <= steady * Math.abs(mean);
+    }
+
+    private static double max(double[] samples) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double s : samples) {
+            max = Math.max(max, s);
+        }
+        return max;
+    }
+}
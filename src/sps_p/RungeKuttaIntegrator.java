@@ -0,0 +1,63 @@
+package sps_p;
+
+/**
+ * The classical 4th order Runge-Kutta method. Interactions are evaluated 4 times per step at
+ * ri, ri + dt/2 * k1, ri + dt/2 * k2 and ri + dt * k3.
+ */
+class RungeKuttaIntegrator implements Integrator {
+    private double dt;
+
+    private double[] k1x, k1y, k2x, k2y, k3x, k3y, k4x, k4y;
+    private double[] tx, ty;
+
+    RungeKuttaIntegrator(double dt) {
+        if (dt <= 0) {
+            throw new IllegalArgumentException("dt must be positive: " + dt);
+        }
+        this.dt = dt;
+    }
+
+    @Override
+    public double step(ParticleStore store, ForceKernel kernel) {
+        int n = store.num;
+        if (tx == null || tx.length != n) {
+            k1x = new double[n];
+            k1y = new double[n];
+            k2x = new double[n];
+            k2y = new double[n];
+            k3x = new double[n];
+            k3y = new double[n];
+            k4x = new double[n];
+            k4y = new double[n];
+            tx = new double[n];
+            ty = new double[n];
+        }
+        double[] x = store.x;
+        double[] y = store.y;
+
+        kernel.compute(x, y, k1x, k1y);
+        for (int i = 0; i < n; i++) {
+            tx[i] = x[i] + dt * 0.5 * k1x[i];
+            ty[i] = y[i] + dt * 0.5 * k1y[i];
+        }
+        kernel.compute(tx, ty, k2x, k2y);
+        for (int i = 0; i < n; i++) {
+            tx[i] = x[i] + dt * 0.5 * k2x[i];
+            ty[i] = y[i] + dt * 0.5 * k2y[i];
+        }
+        kernel.compute(tx, ty, k3x, k3y);
+        for (int i = 0; i < n; i++) {
+            tx[i] = x[i] + dt * k3x[i];
+            ty[i] = y[i] + dt * k3y[i];
+        }
+        kernel.compute(tx, ty, k4x, k4y);
+
+        for (int i = 0; i < n; i++) {
+            store.vx[i] = (k1x[i] + 2 * k2x[i] + 2 * k3x[i] + k4x[i]) / 6.0;
+            store.vy[i] = (k1y[i] + 2 * k2y[i] + 2 * k3y[i] + k4y[i]) / 6.0;
+            x[i] += dt * store.vx[i];
+            y[i] += dt * store.vy[i];
+        }
+        return dt;
+    }
+}
@@ -0,0 +1,19 @@
+package sps_p;
+
+import java.util.Arrays;
+
+/**
+ * Calculate all pairs on the calling thread. This doesn't allocate any object.
+ */
+class SerialForceKernel extends ForceKernel {
+    SerialForceKernel(SimulationEngine engine) {
+        super(engine);
+    }
+
+    @Override
+    void compute(double[] x, double[] y, double[] fx, double[] fy) {
+        Arrays.fill(fx, 0.0);
+        Arrays.fill(fy, 0.0);
+        accumulateRows(0, x.length, x, y, fx, fy);
+    }
+}
@@ -0,0 +1,414 @@
+package sps_p;
+
+import sps_p.utils.Xoshiro256;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Hold the state of a simulation, which is particles, parameter K and a boundary mode, and calculate next position
+ * for each particle. This class doesn't depend on Swing, so it can run without any window. A viewer like Swarm
+ * observes this engine and is notified after each step.
+ */
+public class SimulationEngine {
+    static final int CYCLE_L = 10;
+    static final double TIME_STEP = 0.002;
+
+    private int pNum;
+    private int pType;
+    private int center;
+    private ParticleStore store;
+
+    /**
+     * The generator of all random numbers of this run, like initial positions and random parameter K.
+     */
+    private long seed;
+    private Xoshiro256 random;
+
+    private int count = 0;
+
+    /**
+     * The simulated time, which is the sum of time steps.
+     */
+    private double time = 0.0;
+
+    /**
+     * The time step of the last step, which scales V of Observables. Velocities are zero before the first step.
+     */
+    private double dt = TIME_STEP;
+
+    private Boundary boundary;
+    private Parameter parameter;
+    private ForceKernel kernel;
+    private Integrator integrator;
+    private Observables observables = new Observables();
+
+    /**
+     * The softening length. |Rij| in interactions is replaced by sqrt(|Rij|^2 + softening^2), which keeps them finite
+     * when particles come close. 0 means the model without softening.
+     */
+    private double softening = 0.0;
+
+    /**
+     * The way to put particles at the start and at reset(), and the distance between particles which it keeps.
+     */
+    private InitialCondition initialCondition = InitialCondition.RANDOM;
+    private double spacing = 0.0;
+
+    /**
+     * Sort particles along the Z-order curve every this number of steps. 0 means never.
+     */
+    private int reorderInterval = 0;
+    private MortonOrder morton;
+
+    private List<Observer> observers = new ArrayList<>();
+
+    /**
+     * Actions posted from other threads, like the buttons of Swarm on the event dispatch thread. They change the
+     * state which step() reads and writes, so they run on the thread of the engine between steps.
+     */
+    private final ConcurrentLinkedQueue<Runnable> actions = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Observer which is notified after each step. This is called on the thread which runs the engine.
+     */
+    interface Observer {
+        void stepped(SimulationEngine engine);
+    }
+
+    /**
+     * Initialize particles around |center| with the parameter K defined by ParameterKabpm and a random seed.
+     *
+     * @param num    The number of particles.
+     * @param type   The number of type of particles.
+     * @param center The center of the initial positions. Particles are put between center - 1 and center + 1.
+     */
+    public SimulationEngine(int num, int type, int center) {
+        this(num, type, center, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Initialize particles in the same way, but random numbers are made from |seed|, so the same seed gives the same
+     * initial positions and parameter K.
+     *
+     * @param num    The number of particles.
+     * @param type   The number of type of particles.
+     * @param center The center of the initial positions. Particles are put between center - 1 and center + 1.
+     * @param seed   The seed of random numbers.
+     */
+    public SimulationEngine(int num, int type, int center, long seed) {
+        this.pNum = num;
+        this.pType = type;
+        this.center = center;
+        this.seed = seed;
+        this.random = new Xoshiro256(seed);
+
+        this.parameter = new ParameterKabpm(num, type, this);
+
+        this.boundary = Boundary.OPEN;
+        this.kernel = new SerialForceKernel(this);
+        this.integrator = new EulerIntegrator(TIME_STEP);
+
+        this.store = new ParticleStore(num);
+        store.initPositions(center - 1, center + 1, random);
+    }
+
+    /**
+     * Calculate one step for each particle by the integrator and notify observers.
+     * The time evolution ri(dot) = Σ(i!=j) (kij|Rij|^(-1) - |Rij|^(-2)) * ^Rij is calculated by ForceKernel,
+     * where Rij = rj - ri, ^Rij = Rij / |Rij|, and kij denotes a constant that represents
+     * "to what extent person i prefers person j".
+     * This method doesn't allocate any object with the default integrator.
+     */
+    public void step() {
+        if (reorderInterval > 0 && count % reorderInterval == 0) {
+            morton.sort(store, parameter.types, boundary);
+        }
+        double[] x = store.x;
+        double[] y = store.y;
+
+        dt = integrator.step(store, kernel);
+
+        if (boundary == Boundary.PERIODIC) {
+            for (int i = 0; i < pNum; i++) {
+                x[i] = imaging(x[i]);
+                y[i] = imaging(y[i]);
+            }
+        }
+
+        time += dt;
+        count++;
+        for (int i = 0; i < observers.size(); i++) {
+            observers.get(i).stepped(this);
+        }
+    }
+
+    /**
+     * Calculate |steps| steps.
+     *
+     * @param steps The number of steps.
+     */
+    public void run(long steps) {
+        for (long i = 0; i < steps; i++) {
+            step();
+        }
+    }
+
+    /**
+     * Reset the positions of all particles and the count of steps. Particles are moved back into the order of ids
+     * first, so the new positions are the same as ones of a new engine with the same random numbers.
+     */
+    void reset() {
+        if (morton != null) {
+            morton.sortById(store, parameter.types);
+        }
+        initialCondition.place(store, center, spacing, random);
+        count = 0;
+        time = 0.0;
+        observables.count = -1;
+    }
+
+    /**
+     * Restore the state saved by Checkpoint. Observers are not notified.
+     */
+    void restore(Boundary boundary, int count, double time, double dt, double[] x, double[] y, double[] vx,
+                 double[] vy, int[] ids) {
+        this.boundary = boundary;
+        this.count = count;
+        this.time = time;
+        this.dt = dt;
+        System.arraycopy(x, 0, store.x, 0, pNum);
+        System.arraycopy(y, 0, store.y, 0, pNum);
+        System.arraycopy(vx, 0, store.vx, 0, pNum);
+        System.arraycopy(vy, 0, store.vy, 0, pNum);
+        System.arraycopy(ids, 0, store.ids, 0, pNum);
+        observables.count = -1;
+    }
+
+    /**
+     * Restore the random generator saved by Checkpoint.
+     *
+     * @param seed  The seed which the generator was made from.
+     * @param state The state of the generator.
+     */
+    void restoreRandom(long seed, long[] state) {
+        this.seed = seed;
+        random.setState(state);
+    }
+
+    /**
+     * Run |action| on the thread of the engine before the next step, when runPosted() is called. This can be called
+     * from any thread.
+     *
+     * @param action The action which changes the engine, for example reset().
+     */
+    void post(Runnable action) {
+        actions.add(action);
+    }
+
+    /**
+     * Run all posted actions in the order they were posted, including ones posted by them. This must be called on the
+     * thread which runs step(), between steps.
+     *
+     * @return Whether any action ran.
+     */
+    boolean runPosted() {
+        boolean ran = false;
+        Runnable action;
+        while ((action = actions.poll()) != null) {
+            action.run();
+            ran = true;
+        }
+        return ran;
+    }
+
+    void addObserver(Observer observer) {
+        observers.add(observer);
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int getNum() {
+        return pNum;
+    }
+
+    int getType() {
+        return pType;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    Xoshiro256 getRandom() {
+        return random;
+    }
+
+    ParticleStore getStore() {
+        return store;
+    }
+
+    double getTime() {
+        return time;
+    }
+
+    /**
+     * @return The time step of the last step.
+     */
+    double getDt() {
+        return dt;
+    }
+
+    Parameter getParameter() {
+        return parameter;
+    }
+
+    /**
+     * Return the center of gravity, X, and V at the current step. They are calculated at the first call after each step
+     * and written into the same record, so the returned object changes after the next step.
+     *
+     * @return The observables at the current step.
+     */
+    Observables getObservables() {
+        if (observables.count != count) {
+            observables.compute(store, boundary, count, dt);
+        }
+        return observables;
+    }
+
+    ForceKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Change the way to calculate the sum of interactions, for example to ParallelForceKernel.
+     *
+     * @param kernel The new ForceKernel.
+     */
+    void setKernel(ForceKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    double getSoftening() {
+        return softening;
+    }
+
+    /**
+     * Soften the interactions like the Plummer potential, so (kij|Rij|^(-1) - |Rij|^(-2)) * ^Rij becomes
+     * (kij s^(-1) - s^(-2)) * Rij / s where s = sqrt(|Rij|^2 + |softening|^2). Interactions between particles farther
+     * than |softening| barely change, and ones between close particles stay finite and go to 0 at the same position,
+     * so a larger time step doesn't throw particles away. All kernels use this.
+     *
+     * @param softening The softening length. 0 means no softening.
+     */
+    void setSoftening(double softening) {
+        if (!(softening >= 0) || Double.isInfinite(softening)) {
+            throw new IllegalArgumentException("softening must not be negative: " + softening);
+        }
+        this.softening = softening;
+    }
+
+    InitialCondition getInitialCondition() {
+        return initialCondition;
+    }
+
+    /**
+     * Put particles by |condition| instead of the random square around the center, and reset the engine. reset() uses
+     * the same condition later.
+     *
+     * @param condition The way to put particles.
+     * @param spacing   The distance between neighboring particles, which RANDOM doesn't use.
+     */
+    void setInitialCondition(InitialCondition condition, double spacing) {
+        if (condition != InitialCondition.RANDOM && (!(spacing > 0) || Double.isInfinite(spacing))) {
+            throw new IllegalArgumentException("spacing must be positive: " + spacing);
+        }
+        this.initialCondition = condition;
+        this.spacing = spacing;
+        reset();
+    }
+
+    int getReorderInterval() {
+        return reorderInterval;
+    }
+
+    /**
+     * Sort particles along the Z-order curve by MortonOrder every |interval| steps, before the step whose count is a
+     * multiple of it. This makes kernels which visit neighbors faster for large N. Ids of particles are kept in
+     * ParticleStore.ids.
+     *
+     * @param interval The number of steps between sorts. 0 means never.
+     */
+    void setReorderInterval(int interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("interval must not be negative: " + interval);
+        }
+        this.reorderInterval = interval;
+        if (interval > 0 && morton == null) {
+            morton = new MortonOrder();
+        }
+    }
+
+    Integrator getIntegrator() {
+        return integrator;
+    }
+
+    /**
+     * Change the way to advance positions by (dot)ri, for example to RungeKuttaIntegrator.
+     *
+     * @param integrator The new Integrator.
+     */
+    void setIntegrator(Integrator integrator) {
+        this.integrator = integrator;
+    }
+
+    Boundary getBoundary() {
+        return boundary;
+    }
+
+    void setBoundary(Boundary boundary) {
+        this.boundary = boundary;
+        observables.count = -1;
+    }
+
+    void toggleBoundary() {
+        switch (boundary) {
+            case OPEN:
+                boundary = Boundary.PERIODIC;
+                break;
+            case PERIODIC:
+                boundary = Boundary.OPEN;
+                break;
+        }
+        observables.count = -1;
+    }
+
+    /**
+     * Calculate |Rij| which denotes the distance between particle i and particle j.
+     *
+     * @param x1 The position x of particle I.
+     * @param y1 The position y of particle I.
+     * @param x2 The position x of particle J.
+     * @param y2 The position y of particle J.
+     * @return The distance between particle i and particle j.
+     */
+    double distance(double x1, double y1, double x2, double y2) {
+        return boundary.distance(x1, y1, x2, y2);
+    }
+
+    /**
+     * Move the range of from 0 to CYCLE_L.
+     *
+     * @param x Current position.
+     * @return Moved position.
+     */
+    private double imaging(double x) {
+        if (x < 0) return (x % CYCLE_L) + CYCLE_L;
+        if (x > CYCLE_L) return x % CYCLE_L;
+        return x;
+    }
+}
@@ -0,0 +1,49 @@
+package sps_p;
+
+/**
+ * A copy of the state of an engine at one step, which is read by a consumer on another thread like the event dispatch
+ * thread. The engine never writes a snapshot while a consumer holds it, so a consumer always sees a whole frame.
+ */
+class Snapshot {
+    int count;
+    double time;
+
+    /**
+     * The time step of the last step, which scales V of Observables.
+     */
+    double dt;
+    Boundary boundary;
+
+    /**
+     * Positions and velocities of particles.
+     */
+    final ParticleStore store;
+
+    /**
+     * The type of each slot of |store|.
+     */
+    final int[] types;
+
+    Snapshot(int num) {
+        this.store = new ParticleStore(num);
+        this.types = new int[num];
+    }
+
+    /**
+     * Copy the current state of |engine|. This is called on the thread which runs the engine.
+     */
+    void copyFrom(SimulationEngine engine) {
+        ParticleStore source = engine.getStore();
+        int num = store.num;
+        System.arraycopy(source.x, 0, store.x, 0, num);
+        System.arraycopy(source.y, 0, store.y, 0, num);
+        System.arraycopy(source.vx, 0, store.vx, 0, num);
+        System.arraycopy(source.vy, 0, store.vy, 0, num);
+        System.arraycopy(source.ids, 0, store.ids, 0, num);
+        System.arraycopy(engine.getParameter().getTypes(), 0, types, 0, num);
+        count = engine.getCount();
+        time = engine.getTime();
+        dt = engine.getDt();
+        boundary = engine.getBoundary();
+    }
+}
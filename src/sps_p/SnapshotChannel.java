@@ -0,0 +1,110 @@
+package sps_p;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hand snapshots of an engine to one consumer without locks. The engine publishes a snapshot every |interval| steps
+ * and never waits for the consumer. If the consumer hasn't taken the previous snapshot yet, it is dropped and reused.
+ * <p>
+ * Each snapshot is in one of 4 places: being written by the engine, |ready| to be taken, |spare| to be written next, or
+ * held by the consumer. Snapshots move between them only by atomic exchanges, so the engine never writes the snapshot
+ * which the consumer reads, and at most 3 snapshots are allocated in usual.
+ */
+class SnapshotChannel implements SimulationEngine.Observer {
+    private final int interval;
+    private final int num;
+
+    /**
+     * The newest snapshot which the consumer hasn't taken.
+     */
+    private final AtomicReference<Snapshot> ready = new AtomicReference<>();
+
+    /**
+     * A snapshot which nobody uses.
+     */
+    private final AtomicReference<Snapshot> spare = new AtomicReference<>();
+
+    /**
+     * The snapshot held by the consumer. This is used only by the consumer.
+     */
+    private Snapshot front;
+
+    private volatile long published = 0;
+    private volatile long dropped = 0;
+
+    /**
+     * Create a channel and start to publish snapshots of |engine|.
+     *
+     * @param engine   The engine to observe.
+     * @param interval Publish a snapshot every this number of steps.
+     */
+    SnapshotChannel(SimulationEngine engine, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be positive: " + interval);
+        }
+        this.interval = interval;
+        this.num = engine.getNum();
+        engine.addObserver(this);
+    }
+
+    /**
+     * Publish a snapshot if the count of |engine| is a multiple of |interval|. This is called on the thread which runs
+     * the engine.
+     */
+    @Override
+    public void stepped(SimulationEngine engine) {
+        if (engine.getCount() % interval == 0) {
+            publish(engine);
+        }
+    }
+
+    /**
+     * Copy the current state of |engine| and make it the newest snapshot.
+     */
+    void publish(SimulationEngine engine) {
+        Snapshot back = spare.getAndSet(null);
+        if (back == null) {
+            back = new Snapshot(num);
+        }
+        back.copyFrom(engine);
+        Snapshot old = ready.getAndSet(back);
+        published++;
+        if (old != null) {
+            dropped++;
+            // If the consumer returned a snapshot in the meantime, |old| is left to GC.
+            spare.compareAndSet(null, old);
+        }
+    }
+
+    /**
+     * Take the newest snapshot. The returned snapshot isn't changed until the next call which returns a new one, and
+     * the snapshot taken before it is given back to the engine. This is called only on the thread of the consumer.
+     *
+     * @return The newest snapshot, or null if no snapshot was published after the last call.
+     */
+    Snapshot take() {
+        Snapshot next = ready.getAndSet(null);
+        if (next == null) {
+            return null;
+        }
+        if (front != null) {
+            spare.compareAndSet(null, front);
+        }
+        front = next;
+        return next;
+    }
+
+    /**
+     * @return The number of published snapshots.
+     */
+    long getPublished() {
+        return published;
+    }
+
+    /**
+     * @return The number of snapshots which were replaced before the consumer took them.
+     */
+    long getDropped() {
+        return dropped;
+    }
+}
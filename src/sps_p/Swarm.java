@@ -3,108 +3,79 @@ package sps_p;
 import sps_p.metrics.KanoKBalanceMetrics;
 import sps_p.metrics.Metrics;
 import sps_p.utils.Extension;
+import sps_p.utils.LogPlot;
 import sps_p.utils.Pair;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.Ellipse2D;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
 
 
 /**
- * Calculate next position for each particle and paint them.
- * There are 2 ways to calculate next position, open boundary and periodic boundary.
+ * Paint particles of a SimulationEngine. This is an optional viewer which receives snapshots of the engine,
+ * so the engine can run without this class and never waits for painting.
+ * There are 2 ways to paint particles, open boundary and periodic boundary.
  */
 public class Swarm extends JPanel {
     private int width;
     private int height;
 
-    private static final int SCALE = 10;
-    private static final int CYCLE_L = 10;
-    private static final double TIME_STEP = 0.002;
+    static final int SCALE = 10;
     private static final int P_SIZE = 10;
 
-    private int pNum;
-    private int pType;
-    private List<Particle> particles;
+    /**
+     * The engine publishes a snapshot every this number of steps.
+     */
+    private static final int SNAPSHOT_INTERVAL = 100;
 
-    private int count = 0;
-    private Boundary boundary;
-    private Parameter parameter;
+    /**
+     * Check a new snapshot every this milliseconds.
+     */
+    private static final int FRAME_MILLIS = 30;
 
-    private Metrics metrics = KanoKBalanceMetrics.getInstance();
+    /**
+     * The color of each type. The colors are used again from the first one when there are more types.
+     */
+    private static final Color[] TYPE_COLORS = {
+            Color.RED, Color.BLUE, Color.GREEN, Color.ORANGE, Color.MAGENTA, Color.CYAN, Color.PINK, Color.DARK_GRAY
+    };
 
-    private enum Boundary {
-        OPEN,
-        PERIODIC
-    }
+    private SimulationEngine engine;
+    private LogPlot plot;
+
+    private SnapshotChannel channel;
+    private Snapshot snapshot;
+    private Observables observables = new Observables();
+
+    private Metrics metrics = KanoKBalanceMetrics.getInstance();
 
-    public Swarm(int width, int height, int num, int type) {
+    public Swarm(int width, int height, SimulationEngine engine) {
         this.width = width;
         this.height = height;
-        this.pNum = num;
-        this.pType = type;
+        this.engine = engine;
 
-        this.parameter = new ParameterKabpm(num, type, this);
+        engine.getParameter().attach(this);
+        initLogPlot(); // Set LogPlot up.
 
-        this.boundary = Boundary.OPEN;
         showBoundaryButton();
 
-        this.particles = new ArrayList<>(num);
-        for (int i = 0; i < num; i++) {
-            Particle p = new Particle(i);
-            p.initPosition((width / 2) / SCALE - 1, (width / 2) / SCALE + 1);
-            particles.add(p);
-        }
+        channel = new SnapshotChannel(engine, SNAPSHOT_INTERVAL);
+        new Timer(FRAME_MILLIS, e -> showSnapshot()).start();
     }
 
     /**
-     * Calculate one step for each particle.
+     * Repaint particles and plot X and V if the engine published a new snapshot. This is called on the event dispatch
+     * thread, so X and V are calculated from the snapshot without stopping the engine.
      */
-    public void run() {
-        List<Pair<Double>> timeEvolution = timeEvolutions(particles);
-
-        Pair<Double> curG = ((ParameterKabpm) parameter).getGravity(particles);
-
-        double curX, curY;
-        for (int i = 0; i < pNum; i++) {
-            curX = particles.get(i).x;
-            curY = particles.get(i).y;
-            switch (boundary) {
-                case OPEN:
-                    particles.get(i).x = curX + timeEvolution.get(i).x;
-                    particles.get(i).y = curY + timeEvolution.get(i).y;
-                    break;
-                case PERIODIC:
-                    particles.get(i).x = imaging(curX + timeEvolution.get(i).x);
-                    particles.get(i).y = imaging(curY + timeEvolution.get(i).y);
-                    break;
-            }
-        }
-
-        count++;
-        if (count % 100 == 0) {
+    private void showSnapshot() {
+        Snapshot next = channel.take();
+        if (next != null) {
+            snapshot = next;
             repaint();
 
-            // TODO: Remove these lines for debug.
-            Pair<Double> nextG = ((ParameterKabpm) parameter).getGravity(particles);
-            double x = ((ParameterKabpm) parameter).getX(particles);
-            double v = ((ParameterKabpm) parameter).getV(timeEvolution, curG, nextG);
-            ((ParameterKabpm) parameter).addPoint(x, v);
-//            if (count % 1000 == 0) {
-//                System.out.println("Gravity: " + curG.x + ", " + curG.y + ", X: " + x + ", V: " + v);
-//            }
-
-//            if (count % 100000 == 0) {
-//                Extension.printSwarmParam(parameter.getParams(), count);
-//                BigDecimal result = ((KanoKBalanceMetrics) metrics).calcHeiderBalanceBasedOnAllTriangle(parameter.getParams(), pNum, pType);
-//                Extension.printPairs(
-//                        new Pair<>("HB result", result.toString())
-//                );
-//                System.exit(0);
-//            }
+            observables.compute(snapshot.store, snapshot.boundary, snapshot.count, snapshot.dt);
+            addPoint(observables.x, observables.v);
         }
     }
 
@@ -115,6 +86,8 @@ public class Swarm extends JPanel {
         // TODO: this method can modify scale!!!!
 //        g2.scale(0.5, 0.5);
 
+        // Paint the last snapshot rather than the engine, which may be in the middle of a step.
+        Boundary boundary = snapshot == null ? engine.getBoundary() : snapshot.boundary;
         g2.setColor(Color.LIGHT_GRAY);
         switch (boundary) {
             case OPEN:
@@ -133,24 +106,23 @@ public class Swarm extends JPanel {
                 break;
         }
 
-        for (Particle p : particles) {
-            if (p.id < parameter.getSecondTypeIndex()) {
-                g2.setColor(Color.RED);
-            } else if (p.id < parameter.getThirdTypeIndex()) {
-                g2.setColor(Color.BLUE);
-            } else {
-                g2.setColor(Color.GREEN);
-            }
+        if (snapshot == null) {
+            return;
+        }
+        int[] types = snapshot.types;
+        ParticleStore store = snapshot.store;
+        for (int i = 0; i < store.num; i++) {
+            g2.setColor(TYPE_COLORS[types[i] % TYPE_COLORS.length]);
 
             switch (boundary) {
                 case OPEN:
                     g2.fill(new Ellipse2D.Double(
-                            p.x * SCALE, p.y * SCALE,
+                            store.x[i] * SCALE, store.y[i] * SCALE,
                             P_SIZE, P_SIZE));
                     break;
                 case PERIODIC:
                     g2.fill(new Ellipse2D.Double(
-                            p.x * SCALE * 8, p.y * SCALE * 8,
+                            store.x[i] * SCALE * 8, store.y[i] * SCALE * 8,
                             P_SIZE, P_SIZE));
                     break;
 
@@ -162,75 +134,53 @@ public class Swarm extends JPanel {
     }
 
     /**
-     * Reset the positions of all particles.
+     * X = (N^(-1) * Σ(N, i=1)|ri - rg|)^(-1), rg = N^(-1) * Σ(N, i=1)ri
+     * V = N^(-1) * Σ(N, i=1)|ri(dot)-rg(dot)|
+     * x = log10(10^3*X+1)
+     * y = log10(10^3*V+1)
+     *
+     * @param x The reciprocal of the average of distance from the gravity.
+     * @param v The average of relative speed with the gravity.
      */
-    void reset() {
-        Extension.printSwarmParam(parameter.getParams(), this.count);
-        System.out.println("============= Reset current count ==============");
-        for (Particle p : particles) {
-            p.initPosition((width / 2) / SCALE - 1, (width / 2) / SCALE + 1);
-        }
-
-        // TODO: Remove this lines because they are for experiment to examine the relationship between X, V values and Heider balance value.
-        BigDecimal result = ((KanoKBalanceMetrics) metrics).calcHeiderBalanceBasedOnAllTriangle(parameter.getParams(), pNum, pType);
-        Extension.printPairs(
-                new Pair<>("HB result", result.toString())
-        );
-
-        count = 0;
+    private void addPoint(double x, double v) {
+        plot.addPoint(Math.log10(1000 * x + 1), Math.log10(1000 * v + 1));
     }
 
     /**
-     * Calculate |Rij| which denotes the distance between particle i and particle j.
-     *
-     * @param x1 The position x of particle I.
-     * @param y1 The position y of particle I.
-     * @param x2 The position x of particle J.
-     * @param y2 The position y of particle J.
-     * @return The distance between particle i and particle j.
+     * Should be called once in this constructor. Initialize a LogPlot for X and V parameters.
      */
-    double distance(double x1, double y1, double x2, double y2) {
-        switch (boundary) {
-            case PERIODIC:
-                return distanceClosest(x1, y1, x2, y2);
-            default: // case OPEN:
-                return distanceDirect(x1, y1, x2, y2);
-        }
+    private void initLogPlot() {
+        plot = new LogPlot("log10(10^3*X+1)", "log10(10^3*V+1)");
+        plot.setBounds(10, 490, 260, 260);
+        this.add(plot);
     }
 
     /**
-     * Calculate |Rij| which denotes the distance between particle i and particle j.
-     *
-     * @param p1 Particle i.
-     * @param p2 Particle j.
-     * @return The distance between particle i and particle j.
+     * Reset the positions of all particles and log log plot. This is called on the event dispatch thread, so the engine
+     * is reset by an action posted to its thread, and the plot is cleared back on this thread after that.
      */
-    double distance(Particle p1, Particle p2) {
-        switch (boundary) {
-            case PERIODIC:
-                return distanceClosest(p1, p2);
-            default: // case OPEN:
-                return distanceDirect(p1, p2);
-        }
+    void reset() {
+        engine.post(() -> {
+            Extension.printSwarmParam(engine.getParameter().getParams(), engine.getCount());
+            System.out.println("============= Reset current count ==============");
+            engine.reset();
+            SwingUtilities.invokeLater(plot::clearAll);
+
+            // TODO: Remove this lines because they are for experiment to examine the relationship between X, V values and Heider balance value.
+            BigDecimal result = ((KanoKBalanceMetrics) metrics).calcHeiderBalanceBasedOnAllTriangle(engine.getParameter().getParams(), engine.getParameter().getTypes(), engine.getType());
+            Extension.printPairs(
+                    new Pair<>("HB result", result.toString())
+            );
+        });
     }
 
     /**
-     * Calculate Rij which denotes the difference of position vector between particle i and particle j.
+     * Run |action| on the thread of the engine before its next step. See SimulationEngine.post().
      *
-     * @param p1 Particle i.
-     * @param p2 Particle j.
-     * @return The difference of position vector between particle i and particle j.
+     * @param action The action which changes the engine or parameter K.
      */
-    Pair<Double> diff(Particle p1, Particle p2) {
-        switch (boundary) {
-            case PERIODIC:
-                Pair<Double> diff = new Pair<>(0.0, 0.0);
-                diff.x = diffXClosest(p1, p2);
-                diff.y = diffYClosest(p1, p2);
-                return diff;
-            default: // case OPEN:
-                return diffDirect(p1, p2);
-        }
+    void post(Runnable action) {
+        engine.post(action);
     }
 
     private void showBoundaryButton() {
@@ -239,193 +189,14 @@ public class Swarm extends JPanel {
         tb.setBackground(Color.pink);
         tb.setBounds(650, 700, 120, 30);
         tb.addActionListener(e -> {
-            toggleBoundary();
-            tb.setText(boundary.toString());
+            engine.post(() -> {
+                engine.toggleBoundary();
+                Boundary boundary = engine.getBoundary();
+                SwingUtilities.invokeLater(() -> tb.setText(boundary.toString()));
+            });
             this.reset();
-            parameter.reset();
+            engine.post(() -> engine.getParameter().reset());
         });
         this.add(tb);
     }
-
-    private void toggleBoundary() {
-        switch (boundary) {
-            case OPEN:
-                boundary = Boundary.PERIODIC;
-                break;
-            case PERIODIC:
-                boundary = Boundary.OPEN;
-                break;
-        }
-    }
-
-    /**
-     * Calculate the time evolution of ri for all particles that is given by
-     * ri = Σ(i!=j) (kij|Rij|^(-1) - |Rij|^(-2)) * ^Rij.
-     * Rij = rj - ri, ^Rij = Rij / |Rij|, and kij denotes a constant that represents
-     * "to what extent person i prefers person j".
-     *
-     * @param particles All N particles.
-     * @return The list of the time evolution for each ri.
-     */
-    private List<Pair<Double>> timeEvolutions(List<Particle> particles) {
-        Pair<Double> sum = new Pair<>(0.0, 0.0);
-        Pair<Double> diff;
-        double dis;
-        double paramK;
-        /**
-         * (dot)ri. The time evolution of ri.
-         */
-        List<Pair<Double>> timeEvolutions = new ArrayList<>(pNum);
-
-        for (Particle p1 : particles) {
-            sum.x = 0.0;
-            sum.y = 0.0;
-
-            for (Particle p2 : particles) {
-                if (p1 == p2) continue;
-                dis = distance(p1, p2); // |Rij|.
-                diff = diff(p1, p2); // Rij.
-                paramK = parameter.getKParam(p1.id, p2.id); // kij.
-
-                sum.x += (paramK * Math.pow(dis, -1.0) - Math.pow(dis, -2.0)) * (diff.x / dis);
-                sum.y += (paramK * Math.pow(dis, -1.0) - Math.pow(dis, -2.0)) * (diff.y / dis);
-            }
-            timeEvolutions.add(new Pair<>(calcRungeKutta(sum.x), calcRungeKutta(sum.y)));
-        }
-        return timeEvolutions;
-    }
-
-    private Pair<Double> diffDirect(Particle pi, Particle pj) {
-        return new Pair<>(pj.x - pi.x, pj.y - pi.y);
-    }
-
-    private double diffXDirect(Particle pi, Particle pj) {
-        return pj.x - pi.x;
-    }
-
-    private double diffYDirect(Particle pi, Particle pj) {
-        return pj.y - pi.y;
-    }
-
-    private double distanceDirect(double x1, double y1, double x2, double y2) {
-        return Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1));
-    }
-
-    private double distanceDirect(Particle pi, Particle pj) {
-        double x1 = pi.x;
-        double y1 = pi.y;
-        double x2 = pj.x;
-        double y2 = pj.y;
-        return distanceDirect(x1, y1, x2, y2);
-    }
-
-    /**
-     * Calculate the closest X difference between Pi and moved 9 types Pj.
-     * Pi doesn't change its position and Pj changes its position.
-     *
-     * @param pi Particle I.
-     * @param pj Particle J.
-     * @return The closest X difference between Pi and moved 9 types Pj.
-     */
-    private double diffXClosest(Particle pi, Particle pj) {
-        double tmp;
-        double iX, jX;
-        iX = pi.x % CYCLE_L;
-        jX = pj.x % CYCLE_L;
-        int d[] = {-1, 0, 1};
-        double diffX = diffXDirect(pi, pj);
-        for (int i = 0; i < 3; i++) {
-            tmp = jX + CYCLE_L * d[i] - iX;
-            if (Math.abs(tmp) < Math.abs(diffX)) {
-                diffX = tmp;
-            }
-        }
-        return diffX;
-    }
-
-    /**
-     * Calculate the closest Y difference between Pi and moved 9 types Pj.
-     * Pi doesn't change its position and Pj changes its position.
-     *
-     * @param pi Particle I.
-     * @param pj Particle J.
-     * @return The closest Y difference between Pi and moved 9 types Pj.
-     */
-    private double diffYClosest(Particle pi, Particle pj) {
-        double tmp;
-        double iY, jY;
-        iY = pi.y % CYCLE_L;
-        jY = pj.y % CYCLE_L;
-        int d[] = {-1, 0, 1};
-        double diffY = diffYDirect(pi, pj);
-        for (int i = 0; i < 3; i++) {
-            tmp = jY + CYCLE_L * d[i] - iY;
-            if (Math.abs(tmp) < Math.abs(diffY)) {
-                diffY = tmp;
-            }
-        }
-        return diffY;
-    }
-
-    /**
-     * Calculate the closest distance between Pi and moved 9 types Pj.
-     * Pi doesn't change its position and Pj changes its position.
-     *
-     * @param x1 The position x of particle I.
-     * @param y1 The position y of particle I.
-     * @param x2 The position x of particle J.
-     * @param y2 The position y of particle J.
-     * @return The closest distance between Pi and moved 9 types Pj.
-     */
-    private double distanceClosest(double x1, double y1, double x2, double y2) {
-        double tmp;
-        double iX, iY, jX, jY;
-        iX = x1 % CYCLE_L;
-        iY = y1 % CYCLE_L;
-        jX = x2 % CYCLE_L;
-        jY = y2 % CYCLE_L;
-        int d[] = {-1, 0, 1};
-        double closest = distanceDirect(x1, y1, x2, y2);
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                tmp = distanceDirect(iX, iY, CYCLE_L * d[i] + jX, CYCLE_L * d[j] + jY);
-                if (tmp < closest) {
-                    closest = tmp;
-                }
-            }
-        }
-        return closest;
-    }
-
-    /**
-     * Calculate the closest distance between Pi and moved 9 types Pj.
-     * Pi doesn't change its position and Pj changes its position.
-     *
-     * @param pi Particle I.
-     * @param pj Particle J.
-     * @return The closest distance between Pi and moved 9 types Pj.
-     */
-    private double distanceClosest(Particle pi, Particle pj) {
-        return distanceClosest(pi.x, pi.y, pj.x, pj.y);
-    }
-
-    /**
-     * Move the range of from 0 to CYCLE_L.
-     *
-     * @param x Current position.
-     * @return Moved position.
-     */
-    private double imaging(double x) {
-        if (x < 0) return (x % CYCLE_L) + CYCLE_L;
-        if (x > CYCLE_L) return x % CYCLE_L;
-        return x;
-    }
-
-    private double calcRungeKutta(double x) {
-        double k1 = x;
-        double k2 = x + k1 * TIME_STEP * 0.5;
-        double k3 = x + k2 * TIME_STEP * 0.5;
-        double k4 = x + k3 * TIME_STEP;
-        return (k1 + 2 * k2 + 2 * k3 + k4) * (TIME_STEP / 6.0);
-    }
 }
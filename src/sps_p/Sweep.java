@@ -0,0 +1,208 @@
+package sps_p;
+
+import sps_p.metrics.KanoKBalanceMetrics;
+import sps_p.utils.Arguments;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Run many independent simulations with different A, B, P, and M of ParameterKabpm and write the final state of each
+ * run into a CSV file. Each run has its own engine, so runs are calculated at the same time on a fixed number of
+ * threads.
+ * A line is written as soon as a run finishes, so results of finished runs remain even if the sweep is stopped.
+ * A run stops as soon as RegimeDetector judges that the swarm settled, since most runs settle long before |steps|.
+ * <p>
+ * Options: (The options of Batch about the model and the calculation are also used for each run, except --threads,
+ * since runs are already calculated at the same time by --jobs.)
+ * --ka, --kb, --kp, --km  The values of each parameter. "start:end:count" means |count| values from |start| to |end|,
+ *                         and "0.1,0.5" means the values. The grid is all combinations of them.
+ *                         (default: the default value of ParameterKabpm)
+ * --sets    A file whose lines are "a,b,p,m". This is used instead of the grid.
+ * --seed    The seed of the first run. Run i uses seed + i, so the whole sweep can be repeated. (default: random)
+ * --jobs    The number of runs calculated at the same time. (default: the number of processors)
+ * --steps   The largest number of steps of each run. (default: 100000)
+ * --interval Add X and V to the detector every this number of steps. (default: 1000)
+ * --full    Calculate all steps even if the swarm settled. The regime is still judged.
+ * --output  The file to write results. (default: sweep.csv)
+ * --window, --converged-v, --diverged-x, --steady  The options of the detector. See Batch.
+ */
+class Sweep {
+    private Arguments arguments;
+    private List<double[]> sets;
+    private long seed;
+    private int jobs;
+    private long steps;
+    private int interval;
+    private boolean full;
+    private String output;
+
+    Sweep(Arguments arguments) throws IOException {
+        this.arguments = arguments;
+        this.seed = arguments.getLong("seed", ThreadLocalRandom.current().nextLong());
+        this.jobs = arguments.getInt("jobs", Runtime.getRuntime().availableProcessors());
+        this.steps = arguments.getLong("steps", 100000);
+        this.interval = arguments.getInt("interval", 1000);
+        this.full = arguments.has("full");
+        this.output = arguments.getString("output", "sweep.csv");
+        if (jobs < 1) {
+            throw new IllegalArgumentException("--jobs must be positive: " + jobs);
+        }
+        if (interval < 1) {
+            throw new IllegalArgumentException("--interval must be positive: " + interval);
+        }
+        if (arguments.has("threads")) {
+            throw new IllegalArgumentException("--threads can't be used with --sweep. Use --jobs instead");
+        }
+        // Check the options of the detector before any run.
+        Batch.createDetector(arguments);
+        if (arguments.getInt("type", 2) != 2) {
+            throw new IllegalArgumentException("A, B, P, and M are defined only for 2 types");
+        }
+
+        if (arguments.has("sets")) {
+            sets = readSets(arguments.getString("sets", null));
+        } else {
+            sets = grid(values(arguments.getString("ka", null), ParameterKabpm.DEFAULT_KA),
+                    values(arguments.getString("kb", null), ParameterKabpm.DEFAULT_KB),
+                    values(arguments.getString("kp", null), ParameterKabpm.DEFAULT_KP),
+                    values(arguments.getString("km", null), ParameterKabpm.DEFAULT_KM));
+        }
+    }
+
+    /**
+     * Run all parameter sets and write "run,seed,a,b,p,m,steps,X,V,balance,regime" in the order runs finish.
+     * |run| is the index of the parameter set, |seed| is the seed of random numbers of the run, |steps| is the number of
+     * calculated steps, and |balance| is the Heider balance of parameter K.
+     */
+    void run() throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        CompletionService<String> completion = new ExecutorCompletionService<>(pool);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8))) {
+            writer.println("run,seed,a,b,p,m,steps,X,V,balance,regime");
+            writer.flush();
+            for (int i = 0; i < sets.size(); i++) {
+                int run = i;
+                completion.submit(() -> runOne(run, sets.get(run)));
+            }
+            for (int i = 0; i < sets.size(); i++) {
+                try {
+                    writer.println(completion.take().get());
+                } catch (ExecutionException e) {
+                    // A failed run doesn't stop the others.
+                    System.err.println("A run failed: " + e.getCause());
+                }
+                writer.flush();
+                System.err.printf("%d / %d runs finished%n", i + 1, sets.size());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private String runOne(int run, double[] set) {
+        SimulationEngine engine = Batch.createEngine(arguments, seed + run);
+        ParameterKabpm parameter = (ParameterKabpm) engine.getParameter();
+        parameter.setABPM(set[0], set[1], set[2], set[3]);
+        RegimeDetector detector = Batch.createDetector(arguments);
+
+        for (long i = 0; i < steps; i++) {
+            engine.step();
+            if (engine.getCount() % interval == 0) {
+                Observables observables = engine.getObservables();
+                if (detector.add(observables.x, observables.v).isSettled() && !full) {
+                    break;
+                }
+            }
+        }
+
+        double x = engine.getObservables().x;
+        double v = engine.getObservables().v;
+        double balance = ((KanoKBalanceMetrics) KanoKBalanceMetrics.getInstance())
+                .calcHeiderBalanceInDouble(parameter.getParams(), parameter.getTypes(), 2);
+        return run + "," + engine.getSeed() + "," + set[0] + "," + set[1] + "," + set[2] + "," + set[3] + "," + engine.getCount() + ","
+                + x + "," + v + "," + balance + "," + detector.getRegime();
+    }
+
+    /**
+     * @param spec "start:end:count", comma separated values, or null.
+     * @param def  The value when |spec| is null.
+     * @return The values of a parameter.
+     */
+    private static double[] values(String spec, double def) {
+        if (spec == null) {
+            return new double[]{def};
+        }
+        if (!spec.contains(":")) {
+            String[] items = spec.split(",");
+            double[] values = new double[items.length];
+            for (int i = 0; i < items.length; i++) {
+                values[i] = Double.parseDouble(items[i].trim());
+            }
+            return values;
+        }
+        String[] range = spec.split(":");
+        if (range.length != 3) {
+            throw new IllegalArgumentException("A range must be \"start:end:count\": " + spec);
+        }
+        // Calculate values in decimal, so "0:1:11" gives 0.3 rather than 0.30000000000000004.
+        BigDecimal start = new BigDecimal(range[0].trim());
+        BigDecimal end = new BigDecimal(range[1].trim());
+        int count = Integer.parseInt(range[2].trim());
+        if (count < 1) {
+            throw new IllegalArgumentException("The count of a range must be positive: " + spec);
+        }
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            BigDecimal value = count == 1 ? start : start.add(end.subtract(start)
+                    .multiply(BigDecimal.valueOf(i)).divide(BigDecimal.valueOf(count - 1), MathContext.DECIMAL64));
+            values[i] = value.doubleValue();
+        }
+        return values;
+    }
+
+    private static List<double[]> grid(double[] a, double[] b, double[] p, double[] m) {
+        List<double[]> sets = new ArrayList<>(a.length * b.length * p.length * m.length);
+        for (double va : a) {
+            for (double vb : b) {
+                for (double vp : p) {
+                    for (double vm : m) {
+                        sets.add(new double[]{va, vb, vp, vm});
+                    }
+                }
+            }
+        }
+        return sets;
+    }
+
+    private static List<double[]> readSets(String path) throws IOException {
+        List<double[]> sets = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] items = line.split(",");
+            if (items.length != 4) {
+                throw new IllegalArgumentException("A line of --sets must be \"a,b,p,m\": " + line);
+            }
+            double[] set = new double[4];
+            for (int i = 0; i < 4; i++) {
+                set[i] = Double.parseDouble(items[i].trim());
+            }
+            sets.add(set);
+        }
+        return sets;
+    }
+}
@@ -0,0 +1,168 @@
+package sps_p;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read frames of a file written by TrajectoryWriter. Frame k is read from its offset directly, so reading any frame
+ * takes the same time. The file is memory-mapped by segments of whole frames, and each segment is mapped when a frame
+ * in it is read first.
+ */
+class TrajectoryReader implements Closeable {
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final int num;
+    private final int stride;
+    private final boolean velocities;
+    private final int[] types;
+    private final long headerSize;
+    private final long frameSize;
+    private final long frames;
+    private final long framesPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * The positions and velocities of particles at one step.
+     */
+    static class Frame {
+        long count;
+        double time;
+        final double[] x;
+        final double[] y;
+        /**
+         * Null if the file doesn't have velocities.
+         */
+        final double[] vx;
+        final double[] vy;
+
+        Frame(int num, boolean velocities) {
+            this.x = new double[num];
+            this.y = new double[num];
+            this.vx = velocities ? new double[num] : null;
+            this.vy = velocities ? new double[num] : null;
+        }
+    }
+
+    TrajectoryReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), TrajectoryWriter.FRAMES_OFFSET + Long.BYTES));
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.remaining() < TrajectoryWriter.FRAMES_OFFSET + Long.BYTES || header.getInt() != TrajectoryWriter.MAGIC) {
+            channel.close();
+            throw new IOException("Not a trajectory file: " + path);
+        }
+        int version = header.getInt();
+        if (version != TrajectoryWriter.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported version of a trajectory file: " + version);
+        }
+        this.num = header.getInt();
+        this.velocities = (header.getInt() & TrajectoryWriter.FLAG_VELOCITIES) != 0;
+        this.stride = header.getInt();
+        this.headerSize = header.getInt();
+        long written = header.getLong();
+        this.frameSize = TrajectoryWriter.frameSize(num, velocities);
+
+        MappedByteBuffer typeBuffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                TrajectoryWriter.FRAMES_OFFSET + Long.BYTES, (long) num * Integer.BYTES);
+        typeBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.types = new int[num];
+        typeBuffer.asIntBuffer().get(types);
+
+        this.frames = Math.min(written, (channel.size() - headerSize) / frameSize);
+        this.framesPerSegment = Math.max(1, SEGMENT_BYTES / frameSize);
+        this.segments = new MappedByteBuffer[(int) ((frames + framesPerSegment - 1) / framesPerSegment)];
+    }
+
+    /**
+     * Read frame |k| into a new Frame.
+     */
+    Frame read(long k) throws IOException {
+        return read(k, new Frame(num, velocities));
+    }
+
+    /**
+     * Read frame |k| into |frame|, so frames can be read without allocation.
+     *
+     * @param k     The index of the frame, not the count of steps.
+     * @param frame A frame which was created by read() of this reader.
+     * @return |frame|.
+     */
+    Frame read(long k, Frame frame) throws IOException {
+        if (k < 0 || k >= frames) {
+            throw new IllegalArgumentException("Frame " + k + " doesn't exist in " + frames + " frames");
+        }
+        int index = (int) (k / framesPerSegment);
+        MappedByteBuffer segment = segments[index];
+        if (segment == null) {
+            long first = index * framesPerSegment;
+            long size = Math.min(framesPerSegment, frames - first) * frameSize;
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, headerSize + first * frameSize, size);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segments[index] = segment;
+        }
+
+        int offset = (int) ((k - index * framesPerSegment) * frameSize);
+        frame.count = segment.getLong(offset);
+        frame.time = segment.getDouble(offset + Long.BYTES);
+        segment.position(offset + Long.BYTES + Double.BYTES);
+        segment.asDoubleBuffer().get(frame.x, 0, num).get(frame.y, 0, num);
+        if (velocities) {
+            segment.position(segment.position() + 16 * num);
+            segment.asDoubleBuffer().get(frame.vx, 0, num).get(frame.vy, 0, num);
+        }
+        return frame;
+    }
+
+    int getNum() {
+        return num;
+    }
+
+    int getStride() {
+        return stride;
+    }
+
+    boolean hasVelocities() {
+        return velocities;
+    }
+
+    int[] getTypes() {
+        return types;
+    }
+
+    /**
+     * @return The number of complete frames in the file.
+     */
+    long getFrames() {
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Print the count, the time, and the position of particle 0 of each frame.
+     *
+     * @param args The path of a trajectory file.
+     */
+    public static void main(String[] args) throws IOException {
+        try (TrajectoryReader reader = new TrajectoryReader(Paths.get(args[0]))) {
+            System.out.println("num: " + reader.getNum() + ", stride: " + reader.getStride() + ", frames: "
+                    + reader.getFrames() + ", velocities: " + reader.hasVelocities());
+            Frame frame = null;
+            for (long k = 0; k < reader.getFrames(); k++) {
+                frame = frame == null ? reader.read(k) : reader.read(k, frame);
+                System.out.println(frame.count + "," + frame.time + "," + frame.x[0] + "," + frame.y[0]);
+            }
+        }
+    }
+}
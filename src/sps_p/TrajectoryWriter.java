@@ -0,0 +1,203 @@
+package sps_p;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Record positions of particles every |stride| steps into a binary file, which can be read by TrajectoryReader.
+ * This observes an engine, so it is written after each step without changing the step loop.
+ * <p>
+ * The file is written through memory-mapped regions of about REGION_BYTES, and a new region is mapped when a frame
+ * doesn't fit in the current one, so writing a frame is just a copy of arrays into memory.
+ * <p>
+ * Format: (all values are little endian)
+ * Header: int MAGIC, int VERSION, int num, int flags, int stride, int headerSize, long frames, int[num] types, and
+ *         padding to a multiple of 8 bytes. Bit 0 of flags means frames have velocities. |frames| is updated after
+ *         each frame is written, so a file of a run which stopped suddenly has only complete frames.
+ * Frame:  long count, double time, double[num] x, double[num] y, and double[num] vx, double[num] vy with velocities.
+ * Frame k starts at headerSize + k * frameSize, so any frame can be read without reading the frames before it.
+ * Particles are written in the order of ids even when MortonOrder moved them to other slots.
+ */
+class TrajectoryWriter implements SimulationEngine.Observer, Closeable {
+    static final int MAGIC = 0x50535053; // "SPSP" in little endian.
+    static final int VERSION = 1;
+    static final int FLAG_VELOCITIES = 1;
+
+    /**
+     * The offset of |frames| in the header.
+     */
+    static final int FRAMES_OFFSET = 24;
+
+    private static final long REGION_BYTES = 64L << 20;
+
+    private final FileChannel channel;
+    private final int num;
+    private final int stride;
+    private final boolean velocities;
+    private final long headerSize;
+    private final long frameSize;
+    private final long framesPerRegion;
+
+    private final MappedByteBuffer header;
+    private MappedByteBuffer region;
+    /**
+     * A view of |region|, which is created once per region, so writing a frame doesn't allocate any object.
+     */
+    private DoubleBuffer regionDoubles;
+    private long regionFirstFrame;
+    private long frames = 0;
+
+    /**
+     * Create a file and write its header. The existing file is overwritten.
+     *
+     * @param path       The file to write.
+     * @param engine     The engine to record. This writer observes it.
+     * @param stride     Write a frame every this number of steps.
+     * @param velocities Also write the velocity of each particle.
+     */
+    TrajectoryWriter(Path path, SimulationEngine engine, int stride, boolean velocities) throws IOException {
+        this(path, engine, stride, velocities, false);
+    }
+
+    /**
+     * Create a file, or continue an existing file when |append| is true. In that case, frames of steps after the
+     * current count of |engine| are discarded, so a run which is resumed from a checkpoint continues the same file.
+     *
+     * @param path       The file to write.
+     * @param engine     The engine to record. This writer observes it.
+     * @param stride     Write a frame every this number of steps.
+     * @param velocities Also write the velocity of each particle.
+     * @param append     Continue the existing file if it exists.
+     */
+    TrajectoryWriter(Path path, SimulationEngine engine, int stride, boolean velocities, boolean append)
+            throws IOException {
+        if (stride < 1) {
+            throw new IllegalArgumentException("stride must be positive: " + stride);
+        }
+        this.num = engine.getNum();
+        this.stride = stride;
+        this.velocities = velocities;
+        this.headerSize = headerSize(num);
+        this.frameSize = frameSize(num, velocities);
+        this.framesPerRegion = Math.max(1, REGION_BYTES / frameSize);
+
+        boolean resume = append && Files.exists(path);
+        if (resume) {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            int flags = velocities ? FLAG_VELOCITIES : 0;
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != num
+                    || header.getInt(12) != flags || header.getInt(16) != stride) {
+                channel.close();
+                throw new IOException("The trajectory file was written with other options: " + path);
+            }
+            // Frame k is the step (k + 1) * stride, since frames are written from the step 0.
+            frames = Math.min(header.getLong(FRAMES_OFFSET), engine.getCount() / stride);
+            header.putLong(FRAMES_OFFSET, frames);
+        } else {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(num).putInt(velocities ? FLAG_VELOCITIES : 0)
+                    .putInt(stride).putInt((int) headerSize).putLong(0);
+            int[] types = engine.getParameter().getTypes();
+            int[] ids = engine.getStore().ids;
+            int typesOffset = header.position();
+            for (int s = 0; s < num; s++) {
+                header.putInt(typesOffset + ids[s] * Integer.BYTES, types[s]);
+            }
+        }
+
+        engine.addObserver(this);
+    }
+
+    /**
+     * Write a frame if the count of |engine| is a multiple of |stride|.
+     */
+    @Override
+    public void stepped(SimulationEngine engine) {
+        if (engine.getCount() % stride != 0) {
+            return;
+        }
+        try {
+            write(engine.getCount(), engine.getTime(), engine.getStore());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Append a frame.
+     *
+     * @param count The count of steps.
+     * @param time  The simulated time.
+     * @param store Positions and velocities of particles.
+     */
+    void write(long count, double time, ParticleStore store) throws IOException {
+        if (region == null || frames - regionFirstFrame >= framesPerRegion) {
+            regionFirstFrame = frames;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, headerSize + frames * frameSize,
+                    framesPerRegion * frameSize);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            regionDoubles = region.asDoubleBuffer();
+        }
+        int offset = (int) ((frames - regionFirstFrame) * frameSize);
+        region.putLong(offset, count);
+        region.putDouble(offset + Long.BYTES, time);
+        int base = (offset + Long.BYTES + Double.BYTES) / Double.BYTES;
+        put(base, store.x, store.ids);
+        put(base + num, store.y, store.ids);
+        if (velocities) {
+            put(base + 2 * num, store.vx, store.ids);
+            put(base + 3 * num, store.vy, store.ids);
+        }
+        frames++;
+        header.putLong(FRAMES_OFFSET, frames);
+    }
+
+    /**
+     * Write the values of slots into the indexes of ids from |base| of the current region.
+     */
+    private void put(int base, double[] values, int[] ids) {
+        for (int s = 0; s < num; s++) {
+            regionDoubles.put(base + ids[s], values[s]);
+        }
+    }
+
+    /**
+     * @return The number of written frames.
+     */
+    long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Cut the unused part of the last region and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        region = null;
+        regionDoubles = null;
+        channel.truncate(headerSize + frames * frameSize);
+        channel.close();
+    }
+
+    static long headerSize(int num) {
+        long size = FRAMES_OFFSET + Long.BYTES + (long) num * Integer.BYTES;
+        return (size + 7) & ~7L;
+    }
+
+    static long frameSize(int num, boolean velocities) {
+        return Long.BYTES + Double.BYTES + (long) num * Double.BYTES * (velocities ? 4 : 2);
+    }
+}
@@ -0,0 +1,376 @@
+package sps_p;
+
+import java.util.Arrays;
+
+/**
+ * Calculate interactions only between particles closer than a cutoff radius by Verlet neighbor lists.
+ * The list of particle i has the particles j > i which were closer than cutoff + skin when it was built, so it still
+ * has all pairs within the cutoff until a particle moves more than skin / 2. The lists are rebuilt only then, which is
+ * much less often than every step since particles move a small part of the cutoff in a step.
+ * <p>
+ * The lists are stored in CSR form: the neighbors of i are neighbors[neighborStart[i]] ...
+ * neighbors[neighborStart[i + 1] - 1] in ascending order. Pairs are visited in the order of (i, j) whatever the lists
+ * were built from, so the result doesn't depend on when the lists were rebuilt, and a resumed run is bit-identical.
+ * <p>
+ * The lists are built from a grid of cells whose size is at least cutoff + skin, in the same way as
+ * CellListForceKernel, in both OPEN and PERIODIC boundaries. They are also rebuilt when the boundary changes or
+ * MortonOrder moves particles.
+ */
+class VerletListForceKernel extends ForceKernel {
+    /**
+     * The maximum number of cells per particle. The cells become larger than cutoff + skin when particles spread widely
+     * in an open boundary.
+     */
+    private static final int MAX_CELLS_PER_PARTICLE = 2;
+
+    /**
+     * The offsets of neighbor cells visited from a cell. The other 4 neighbors visit the cell instead.
+     */
+    private static final int[][] HALF_NEIGHBORS = {{1, 0}, {-1, 1}, {0, 1}, {1, 1}};
+
+    /**
+     * Rows longer than this are sorted by Arrays.sort().
+     */
+    private static final int INSERTION_SORT_MAX = 64;
+
+    private double cutoff;
+    private double skin;
+
+    private int[] neighborStart = new int[0];
+    private int[] neighbors = new int[0];
+
+    /**
+     * Pairs found while building, with the smaller index in |pairLow|.
+     */
+    private int[] pairLow = new int[0];
+    private int[] pairHigh = new int[0];
+    private int pairCount;
+
+    /**
+     * The positions when the lists were built.
+     */
+    private double[] buildX = new double[0];
+    private double[] buildY = new double[0];
+    private boolean builtPeriodic;
+    private int builtSorts = -1;
+
+    private int nx, ny;
+    private double cellSize;
+    private double originX, originY;
+    private boolean wrap;
+    private int[] cellStart = new int[0];
+    private int[] cellOrder = new int[0];
+    private int[] cellOf = new int[0];
+
+    /**
+     * Counters to tune the skin.
+     */
+    private long computes = 0;
+    private long builds = 0;
+
+    /**
+     * @param engine The engine which has parameter K and a boundary.
+     * @param cutoff The distance beyond which interactions are ignored.
+     * @param skin   The margin added to the cutoff in the lists. A larger skin rebuilds less often but visits more
+     *               pairs in each step.
+     */
+    VerletListForceKernel(SimulationEngine engine, double cutoff, double skin) {
+        super(engine);
+        if (cutoff <= 0) {
+            throw new IllegalArgumentException("cutoff must be positive: " + cutoff);
+        }
+        if (skin < 0) {
+            throw new IllegalArgumentException("skin must not be negative: " + skin);
+        }
+        this.cutoff = cutoff;
+        this.skin = skin;
+    }
+
+    @Override
+    void compute(double[] x, double[] y, double[] fx, double[] fy) {
+        boolean periodic = engine.getBoundary() == Boundary.PERIODIC;
+        if (needsBuild(x, y, periodic)) {
+            build(x, y, periodic);
+        }
+        computes++;
+
+        Arrays.fill(fx, 0.0);
+        Arrays.fill(fy, 0.0);
+        Parameter parameter = engine.getParameter();
+        int[] types = parameter.types;
+        double[] k = parameter.flatParams;
+        int pType = parameter.pType;
+        double cutoff2 = cutoff * cutoff;
+        double eps2 = engine.getSoftening() * engine.getSoftening();
+        int n = x.length;
+        int rowI, ti, j;
+        double dx, dy, dis2;
+        double inv, rep;
+        double fij, fji;
+        double sumX, sumY;
+
+        for (int i = 0; i < n; i++) {
+            sumX = 0.0;
+            sumY = 0.0;
+            ti = types[i];
+            rowI = ti * pType;
+
+            for (int b = neighborStart[i]; b < neighborStart[i + 1]; b++) {
+                j = neighbors[b];
+                dx = x[j] - x[i];
+                dy = y[j] - y[i];
+                if (periodic) {
+                    dx = Boundary.minimumImage(dx);
+                    dy = Boundary.minimumImage(dy);
+                }
+                dis2 = dx * dx + dy * dy;
+                if (dis2 > cutoff2) {
+                    continue;
+                }
+                inv = 1.0 / Math.sqrt(dis2 + eps2); // |Rij|^(-1).
+                rep = inv * inv; // |Rij|^(-2).
+                fij = (k[rowI + types[j]] * inv - rep) * inv;
+                fji = (k[types[j] * pType + ti] * inv - rep) * inv;
+                sumX += fij * dx;
+                sumY += fij * dy;
+                fx[j] -= fji * dx;
+                fy[j] -= fji * dy;
+            }
+            fx[i] += sumX;
+            fy[i] += sumY;
+        }
+    }
+
+    /**
+     * @return The number of calls of compute().
+     */
+    long getComputes() {
+        return computes;
+    }
+
+    /**
+     * @return The number of times the lists were built.
+     */
+    long getBuilds() {
+        return builds;
+    }
+
+    /**
+     * @return The number of pairs in the current lists.
+     */
+    int getPairs() {
+        return neighborStart.length == 0 ? 0 : neighborStart[neighborStart.length - 1];
+    }
+
+    /**
+     * @return True if the lists may miss a pair within the cutoff at the positions x and y.
+     */
+    private boolean needsBuild(double[] x, double[] y, boolean periodic) {
+        int n = x.length;
+        if (buildX.length != n || periodic != builtPeriodic || engine.getStore().sorts != builtSorts) {
+            return true;
+        }
+        // A pair comes closer by at most the sum of the displacements of the 2 particles.
+        double limit2 = skin * skin / 4;
+        double dx, dy;
+        for (int i = 0; i < n; i++) {
+            dx = x[i] - buildX[i];
+            dy = y[i] - buildY[i];
+            if (periodic) {
+                dx = Boundary.minimumImage(dx);
+                dy = Boundary.minimumImage(dy);
+            }
+            if (dx * dx + dy * dy > limit2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Build the lists of pairs closer than cutoff + skin at the positions x and y.
+     * Pairs are found once by visiting 4 of 8 neighbor cells as CellListForceKernel does, collected with the smaller
+     * index first, and put into rows by counting sort. Then each row is sorted.
+     */
+    private void build(double[] x, double[] y, boolean periodic) {
+        int n = x.length;
+        double range = cutoff + skin;
+        sortIntoCells(x, y, periodic, range);
+        if (neighborStart.length != n + 1) {
+            neighborStart = new int[n + 1];
+            buildX = new double[n];
+            buildY = new double[n];
+        }
+
+        pairCount = 0;
+        int c, m, ncx, ncy;
+        for (int cy = 0; cy < ny; cy++) {
+            for (int cx = 0; cx < nx; cx++) {
+                c = cy * nx + cx;
+                for (int a = cellStart[c]; a < cellStart[c + 1]; a++) {
+                    // Pairs in the same cell.
+                    collect(a + 1, cellStart[c + 1], cellOrder[a], x, y, periodic, range * range);
+                    // Pairs with neighbor cells.
+                    for (int[] offset : HALF_NEIGHBORS) {
+                        ncx = cx + offset[0];
+                        ncy = cy + offset[1];
+                        if (wrap) {
+                            ncx = (ncx + nx) % nx;
+                            ncy = (ncy + ny) % ny;
+                        } else if (ncx < 0 || ncx >= nx || ncy < 0 || ncy >= ny) {
+                            continue;
+                        }
+                        m = ncy * nx + ncx;
+                        collect(cellStart[m], cellStart[m + 1], cellOrder[a], x, y, periodic, range * range);
+                    }
+                }
+            }
+        }
+
+        if (neighbors.length < pairCount) {
+            neighbors = new int[pairLow.length];
+        }
+        Arrays.fill(neighborStart, 0);
+        for (int p = 0; p < pairCount; p++) {
+            neighborStart[pairLow[p] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            neighborStart[i + 1] += neighborStart[i];
+        }
+        // Fill each row from its end, then neighborStart[i + 1] becomes the start of the row i.
+        for (int p = pairCount - 1; p >= 0; p--) {
+            neighbors[--neighborStart[pairLow[p] + 1]] = pairHigh[p];
+        }
+        System.arraycopy(neighborStart, 1, neighborStart, 0, n);
+        neighborStart[n] = pairCount;
+        for (int i = 0; i < n; i++) {
+            sortRow(neighborStart[i], neighborStart[i + 1]);
+        }
+
+        System.arraycopy(x, 0, buildX, 0, n);
+        System.arraycopy(y, 0, buildY, 0, n);
+        builtPeriodic = periodic;
+        builtSorts = engine.getStore().sorts;
+        builds++;
+    }
+
+    /**
+     * Collect pairs of particle i and the particles cellOrder[from] ... cellOrder[to - 1] closer than sqrt(range2).
+     */
+    private void collect(int from, int to, int i, double[] x, double[] y, boolean periodic, double range2) {
+        int j;
+        double dx, dy;
+        for (int b = from; b < to; b++) {
+            j = cellOrder[b];
+            dx = x[j] - x[i];
+            dy = y[j] - y[i];
+            if (periodic) {
+                dx = Boundary.minimumImage(dx);
+                dy = Boundary.minimumImage(dy);
+            }
+            if (dx * dx + dy * dy <= range2) {
+                if (pairCount == pairLow.length) {
+                    int capacity = Math.max(1024, 2 * pairCount);
+                    pairLow = Arrays.copyOf(pairLow, capacity);
+                    pairHigh = Arrays.copyOf(pairHigh, capacity);
+                }
+                pairLow[pairCount] = Math.min(i, j);
+                pairHigh[pairCount] = Math.max(i, j);
+                pairCount++;
+            }
+        }
+    }
+
+    /**
+     * Sort neighbors from |from| to |to|. Most rows are short, so insertion sort is used for them, which doesn't
+     * allocate any object like Arrays.sort() may do for long rows.
+     */
+    private void sortRow(int from, int to) {
+        if (to - from > INSERTION_SORT_MAX) {
+            Arrays.sort(neighbors, from, to);
+            return;
+        }
+        for (int a = from + 1; a < to; a++) {
+            int value = neighbors[a];
+            int b = a - 1;
+            while (b >= from && neighbors[b] > value) {
+                neighbors[b + 1] = neighbors[b];
+                b--;
+            }
+            neighbors[b + 1] = value;
+        }
+    }
+
+    /**
+     * Decide the grid of cells of at least |size| and sort particles into cells by counting sort.
+     */
+    private void sortIntoCells(double[] x, double[] y, boolean periodic, double size) {
+        int num = x.length;
+        if (periodic) {
+            int cells = (int) (SimulationEngine.CYCLE_L / size);
+            if (cells < 3) {
+                cells = 1;
+            }
+            nx = cells;
+            ny = cells;
+            cellSize = (double) SimulationEngine.CYCLE_L / cells;
+            originX = 0;
+            originY = 0;
+            wrap = cells >= 3;
+        } else {
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < num; i++) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+            cellSize = size;
+            double maxCells = Math.max(16, (double) MAX_CELLS_PER_PARTICLE * num);
+            double cells = (Math.floor((maxX - minX) / cellSize) + 1) * (Math.floor((maxY - minY) / cellSize) + 1);
+            if (cells > maxCells) {
+                cellSize *= Math.sqrt(cells / maxCells) * 1.01;
+            }
+            nx = (int) ((maxX - minX) / cellSize) + 1;
+            ny = (int) ((maxY - minY) / cellSize) + 1;
+            originX = minX;
+            originY = minY;
+            wrap = false;
+        }
+
+        int cells = nx * ny;
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+        }
+        if (cellOrder.length < num) {
+            cellOrder = new int[num];
+            cellOf = new int[num];
+        }
+        Arrays.fill(cellStart, 0, cells + 1, 0);
+        for (int i = 0; i < num; i++) {
+            cellOf[i] = cell((x[i] - originX) / cellSize, nx) + nx * cell((y[i] - originY) / cellSize, ny);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        for (int i = num - 1; i >= 0; i--) {
+            cellOrder[--cellStart[cellOf[i] + 1]] = i;
+        }
+        System.arraycopy(cellStart, 1, cellStart, 0, cells);
+        cellStart[cells] = num;
+    }
+
+    /**
+     * @param position The position in units of cells.
+     * @param cells    The number of cells on the axis.
+     * @return The index of the cell on the axis.
+     */
+    private int cell(double position, int cells) {
+        int c = (int) Math.floor(position);
+        if (c < 0) return wrap ? (c % cells + cells) % cells : 0;
+        if (c >= cells) return wrap ? c % cells : cells - 1;
+        return c;
+    }
+}
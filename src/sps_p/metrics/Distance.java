@@ -0,0 +1,16 @@
+package sps_p.metrics;
+
+/**
+ * The distance between 2 positions in the space where particles move. The space can be periodic, so metrics use this
+ * instead of calculating the distance by themselves. Ex. SimulationEngine::distance
+ */
+public interface Distance {
+    /**
+     * @param x1 The position x of particle I.
+     * @param y1 The position y of particle I.
+     * @param x2 The position x of particle J.
+     * @param y2 The position y of particle J.
+     * @return The distance between particle i and particle j.
+     */
+    double distance(double x1, double y1, double x2, double y2);
+}
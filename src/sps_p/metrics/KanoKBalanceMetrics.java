@@ -5,6 +5,7 @@ import sps_p.utils.Permutation;
 
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -13,8 +14,8 @@ import java.util.List;
 public class KanoKBalanceMetrics implements Metrics {
     private static Metrics instance = new KanoKBalanceMetrics();
     private final int TRIANGLE = 3;
-    private final List<int[]> MEMO_3C2 = new Combination(3, 2).list();
-    private final List<int[]> MEMO_3P3 = new Permutation(3, 3).list();
+    private final List<int[]> MEMO_3C2 = new ArrayList<>(new Combination(3, 2).list());
+    private final List<int[]> MEMO_3P3 = new ArrayList<>(new Permutation(3, 3).list());
 
     public static Metrics getInstance() {
         return instance;
@@ -33,51 +34,177 @@ public class KanoKBalanceMetrics implements Metrics {
 
     /**
      * Calculates the index of Heider balance state based on all triangles in particles.
+     * Particles are divided into contiguous groups of types in the same way as sps_p.Parameter.
      *
-     * @param k ParameterKij represents "to what extent person i prefers person j" defined in the Kano's thesis.
+     * @param k    ParameterKij represents "to what extent person i prefers person j" defined in the Kano's thesis.
+     * @param n    The total number of particles.
+     * @param type The number of type.
      * @return The average of Heider balance state per a triangle.
      */
     public BigDecimal calcHeiderBalanceBasedOnAllTriangle(double[][] k, int n, int type) {
-        Combination combination = new Combination(n, TRIANGLE);
-        List<int[]> l = combination.list();
-        int tNum = combination.size();
-        int count = 1;
+        return balance(k, countContiguousTypes(n, type));
+    }
 
-        BigDecimal tmp;
+    /**
+     * Calculates the index of Heider balance state based on all triangles in particles.
+     *
+     * @param k     ParameterKij represents "to what extent person i prefers person j" defined in the Kano's thesis.
+     * @param types The type of each particle.
+     * @param type  The number of type.
+     * @return The average of Heider balance state per a triangle.
+     */
+    public BigDecimal calcHeiderBalanceBasedOnAllTriangle(double[][] k, int[] types, int type) {
+        return balance(k, countTypes(types, type));
+    }
+
+    /**
+     * Same as calcHeiderBalanceBasedOnAllTriangle(), but calculated in double. The result can be different in the last
+     * digits, but this doesn't allocate a BigDecimal for each type composition.
+     *
+     * @param k    ParameterKij represents "to what extent person i prefers person j" defined in the Kano's thesis.
+     * @param n    The total number of particles.
+     * @param type The number of type.
+     * @return The average of Heider balance state per a triangle.
+     */
+    public double calcHeiderBalanceInDouble(double[][] k, int n, int type) {
+        return balanceInDouble(k, countContiguousTypes(n, type));
+    }
+
+    /**
+     * Same as calcHeiderBalanceBasedOnAllTriangle(), but calculated in double.
+     *
+     * @param k     ParameterKij represents "to what extent person i prefers person j" defined in the Kano's thesis.
+     * @param types The type of each particle.
+     * @param type  The number of type.
+     * @return The average of Heider balance state per a triangle.
+     */
+    public double calcHeiderBalanceInDouble(double[][] k, int[] types, int type) {
+        return balanceInDouble(k, countTypes(types, type));
+    }
 
+    /**
+     * The Heider balance of a triangle depends only on the types of its 3 particles, so triangles are not enumerated.
+     * Instead, the balance of each composition of types {a, b, c} (a <= b <= c) is multiplied by the number of
+     * triangles with the composition. This is O(type^3) instead of O(n^3), and the sum is exactly the same as the sum
+     * of all triangles because each triangle is rounded in the same way.
+     *
+     * @param k      Parameters represents "to what extent person i prefers person j" defined in the Kano's thesis.
+     * @param counts The number of particles of each type.
+     * @return The average of Heider balance state per a triangle.
+     */
+    private BigDecimal balance(double[][] k, long[] counts) {
+        long tNum = triangles(counts);
+        long c;
         BigDecimal balance = new BigDecimal(0);
-        for (int[] c : l) {
-            tmp = balanceWithPOX(k, c, n, type);
-            balance = balance.add(balanceWithPOX(k, c, n, type));
-//            balance = balance.add(balanceWithAverage(k, c, n, type));
-            System.out.println(count + ": " + balance + ", " + tmp + "[" + c[0] + "," + c[1] + "," + c[2] + "]");
-            count++;
+        for (int a = 0; a < counts.length; a++) {
+            for (int b = a; b < counts.length; b++) {
+                for (int x = b; x < counts.length; x++) {
+                    c = triangles(counts, a, b, x);
+                    if (c == 0) continue;
+                    balance = balance.add(balanceWithPOX(k, new int[]{a, b, x}).multiply(BigDecimal.valueOf(c)));
+                }
+            }
+        }
+        return balance.divide(BigDecimal.valueOf(tNum), MathContext.DECIMAL32);
+    }
+
+    private double balanceInDouble(double[][] k, long[] counts) {
+        long tNum = triangles(counts);
+        long c;
+        int[] t = new int[TRIANGLE];
+        double balance = 0.0;
+        double tmp;
+        for (int a = 0; a < counts.length; a++) {
+            for (int b = a; b < counts.length; b++) {
+                for (int x = b; x < counts.length; x++) {
+                    c = triangles(counts, a, b, x);
+                    if (c == 0) continue;
+                    t[0] = a;
+                    t[1] = b;
+                    t[2] = x;
+                    tmp = 0.0;
+                    for (int[] perm : MEMO_3P3) {
+                        tmp += k[t[perm[0]]][t[perm[1]]] * k[t[perm[0]]][t[perm[2]]] * k[t[perm[1]]][t[perm[2]]];
+                    }
+                    balance += c * (tmp / 6);
+                }
+            }
+        }
+        return balance / tNum;
+    }
+
+    /**
+     * @param counts The number of particles of each type.
+     * @return nC3, the number of all triangles.
+     */
+    private long triangles(long[] counts) {
+        long n = 0;
+        for (long c : counts) {
+            n += c;
+        }
+        if (n < TRIANGLE) {
+            throw new IllegalArgumentException("At least 3 particles are needed for a triangle: " + n);
+        }
+        return n * (n - 1) * (n - 2) / 6;
+    }
+
+    /**
+     * @return The number of triangles whose particles have type a, b, and x. a <= b <= x.
+     */
+    private long triangles(long[] counts, int a, int b, int x) {
+        if (a == b && b == x) {
+            return counts[a] * (counts[a] - 1) * (counts[a] - 2) / 6;
+        } else if (a == b) {
+            return counts[a] * (counts[a] - 1) / 2 * counts[x];
+        } else if (b == x) {
+            return counts[a] * (counts[b] * (counts[b] - 1) / 2);
         }
+        return counts[a] * counts[b] * counts[x];
+    }
 
-        System.out.println("COUNT:" + count);
-        System.out.println("SUM:" + balance);
+    /**
+     * Count particles of each type when they are divided into contiguous groups. Each type has
+     * (the number of remaining particles) / (the number of remaining types) particles as sps_p.Parameter does.
+     * Ex. n=5, type=3 : {0}, {1, 2}, {3, 4} => {1, 2, 2}
+     *
+     * @param n    The total number of particles.
+     * @param type The number of type.
+     * @return The number of particles of each type.
+     */
+    private long[] countContiguousTypes(int n, int type) {
+        long[] counts = new long[type];
+        int rest = n;
+        for (int t = 0; t < type; t++) {
+            counts[t] = rest / (type - t);
+            rest -= counts[t];
+        }
+        return counts;
+    }
 
-        return balance.divide(new BigDecimal(tNum), MathContext.DECIMAL32);
+    private long[] countTypes(int[] types, int type) {
+        long[] counts = new long[type];
+        for (int t : types) {
+            counts[t]++;
+        }
+        return counts;
     }
 
     /**
      * Calculate the Heider balance state with an average of Parameters and Kji.
-     * i.e. c[] = {1, 4, 39};
-     * There is the 3 connections in c[] defined MEMO_3C2.
-     * {1, 4}, {1, 39}, {4, 39}
+     * i.e. t[] = {0, 0, 1};
+     * There is the 3 connections in t[] defined MEMO_3C2.
+     * {0, 0}, {0, 1}, {0, 1}
      * Calculate the average of each combination.
-     * (K(1->4) + K(4->1)) / 2
-     * (K(1->39) + K(39->1)) / 2
-     * (K(4->39) + K(39->3)) / 2
+     * (K(0->0) + K(0->0)) / 2
+     * (K(0->1) + K(1->0)) / 2
+     * (K(0->1) + K(1->0)) / 2
      * Then, multiply all averages.
      *
      * @param k Parameters represents "to what extent person i prefers person j" defined in the Kano's thesis.
-     * @param c The 3 particle's indexes.
-     * @param n The total number of particles.
-     * @param t The number of type.
+     * @param t The types of 3 particles.
      * @return Result of Heider balance state.
      */
-    private BigDecimal balanceWithAverage(double[][] k, int c[], int n, int t) {
+    private BigDecimal balanceWithAverage(double[][] k, int t[]) {
         BigDecimal balance = new BigDecimal(1);
         int iIdx;
         int jIdx;
@@ -86,8 +213,8 @@ public class KanoKBalanceMetrics implements Metrics {
         BigDecimal DIVISOR = new BigDecimal(2);
 
         for (int comb[] : MEMO_3C2) {
-            iIdx = index(c[comb[0]], n, t);
-            jIdx = index(c[comb[1]], n, t);
+            iIdx = t[comb[0]];
+            jIdx = t[comb[1]];
             tmp1 = BigDecimal.valueOf(k[iIdx][jIdx]).add(BigDecimal.valueOf(k[jIdx][iIdx]));
             tmp2 = tmp1.divide(DIVISOR);
             balance = balance.multiply(tmp2);
@@ -98,32 +225,29 @@ public class KanoKBalanceMetrics implements Metrics {
     /**
      * Calculate the Heider balance state with 6 pattens average of POX.
      * In HB theory, only P->O, P->X, O->X directions are valid.
-     * i.e. c[] = {1, 4, 39};
+     * i.e. t[] = {0, 0, 1}, which are the types of 3 particles.
      * All possible patterns are 3! = 3P3 = 6.
      * The number of patterns is always 6 and defined by MEMO_3P3.
      * P  |  O  |  X
      * ===============
-     * 1  |  4  |  39
-     * 1  |  39 |  4
-     * 4  |  1  |  39
-     * 4  |  39 |  1
-     * 39 |  1  |  4
-     * 39 |  4  |  1
+     * 0  |  0  |  1
+     * 0  |  1  |  0
+     * 0  |  0  |  1
+     * 0  |  1  |  0
+     * 1  |  0  |  0
+     * 1  |  0  |  0
      * <p>
      * Calculate the average of the sum of each pattern.
-     * ( K(1->4) * K(1->39) * K(4->39)
-     * + K(1->39) * K(1->4) * K(4->39)
-     * + K(4->1) * K(4->39) * K(1->39)
+     * ( K(0->0) * K(0->1) * K(0->1)
+     * + K(0->1) * K(0->0) * K(1->0)
      * + ....
      * ) / 6
      *
      * @param k Parameters represents "to what extent person i prefers person j" defined in the Kano's thesis.
-     * @param c The 3 particle's indexes.
-     * @param n The total number of particles.
-     * @param t The number of type.
+     * @param t The types of 3 particles.
      * @return Result of Heider balance state.
      */
-    private BigDecimal balanceWithPOX(double[][] k, int c[], int n, int t) {
+    private BigDecimal balanceWithPOX(double[][] k, int t[]) {
         BigDecimal balance = new BigDecimal(0);
         int pIdx;
         int oIdx;
@@ -132,9 +256,9 @@ public class KanoKBalanceMetrics implements Metrics {
         BigDecimal DIVISOR = new BigDecimal(6);
 
         for (int[] perm : MEMO_3P3) {
-            pIdx = index(c[perm[0]], n, t);
-            oIdx = index(c[perm[1]], n, t);
-            xIdx = index(c[perm[2]], n, t);
+            pIdx = t[perm[0]];
+            oIdx = t[perm[1]];
+            xIdx = t[perm[2]];
             tmp = BigDecimal.valueOf(k[pIdx][oIdx])
                     .multiply(BigDecimal.valueOf(k[pIdx][xIdx]))
                     .multiply(BigDecimal.valueOf(k[oIdx][xIdx]));
@@ -147,21 +271,6 @@ public class KanoKBalanceMetrics implements Metrics {
         return balance;
     }
 
-    /**
-     * Note that this method only handle 2 type particles.
-     *
-     * @param i The index of a particle.
-     * @param n The total number of particles.
-     * @param t The number of type.
-     * @return The index for Parameters array.
-     */
-    private int index(int i, int n, int t) {
-        if (i < n / t)
-            return 0;
-        else
-            return 1;
-    }
-
     private Integer[] indexes(int n, int len) {
         Integer indexes[] = new Integer[2];
         int i = 0;
@@ -4,11 +4,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Deprecated.
+ * Metrics based on "Social Mitosis" (http://jasss.soc.surrey.ac.uk/6/3/2.html), which counts balanced triads.
  */
-final class SocialMitosisMetrics implements Metrics {
+public final class SocialMitosisMetrics implements Metrics {
     private static Metrics instance = new SocialMitosisMetrics();
-    private List<int[]> nbals = new ArrayList<>(1000);
+    private List<long[]> nbals = new ArrayList<>(1000);
 
     /**
      * This constructor disallow to create multiple instances because of a private constructor.
@@ -25,85 +25,28 @@ final class SocialMitosisMetrics implements Metrics {
         System.out.println("Social Mitosis sps_p.metrics.Metrics");
     }
 
-    private int isLike(double preDis, double newDis) {
-        if (newDis <= preDis) {
-            return 1;
-        }
-        return -1;
-    }
-
-    private boolean isBalance(double preDisIJ, double newDisIJ, double preDisIK, double newDisIK, double preDisJK, double newDisJK) {
-        return isLike(preDisIJ, newDisIJ) * isLike(preDisIK, newDisIK) * isLike(preDisJK, newDisJK) > 0;
-    }
-
-    // TODO: Currently cannot use it because distance() and distanceClosest() are defined in sps_p.Swarm class.
-//    public int[] nbal(List<Double> preX, List<Double> preY, List<Double> newX, List<Double> newY) {
-    /*
+    /**
      * > The function nbal counted the number of all triads that were balanced,
      * > imbalanced or incomplete (contained at least one null relation).
      * > The nbal function was used only to determine how many iterations were
      * > needed inside the balance function before changes in relations ceased.
      * > It was not a part of the regular simulation.
      * 2.4 (http://jasss.soc.surrey.ac.uk/6/3/2.html)
+     * <p>
+     * Particle i likes particle j when the distance between them didn't increase in a step, so there is no null
+     * relation. Use TriadBalance.update() to count triads repeatedly in the same simulation.
      *
+     * @param preX     The positions x of particles before a step.
+     * @param preY     The positions y of particles before a step.
+     * @param newX     The positions x of particles after the step.
+     * @param newY     The positions y of particles after the step.
+     * @param distance The distance in the space where particles move, which knows the boundary.
      * @return counts The first element means the number of balanced triads and
-     *  the second one means the number of imbalanced triads.
+     * the second one means the number of imbalanced triads.
      */
-
-//        int counts[] = {0, 0};
-//        for (int i = 0; i < pNum; i++) {
-//            for (int j = i + 1; j < pNum; j++) {
-//                for (int k = j + 1; k < pNum; k++) {
-//                     TODO: This function only be correct when an open boundary state.
-//                    switch (boundary) {
-//                        case OPEN:
-//                            if (isBalance(
-//                                    distance(preX.get(i), preY.get(i), preX.get(j), preY.get(i)),
-//                                    distance(newX.get(i), newY.get(i), newX.get(j), newY.get(j)),
-//                                    distance(preX.get(i), preY.get(i), preX.get(k), preY.get(k)),
-//                                    distance(newX.get(i), newY.get(i), newX.get(k), newY.get(k)),
-//                                    distance(preX.get(j), preY.get(j), preX.get(k), preY.get(k)),
-//                                    distance(newX.get(j), newY.get(j), newX.get(k), newY.get(k))
-//                            )) {
-//                                counts[0] += 1;
-//                            } else {
-//                                counts[1] += 1;
-//                            }
-//                            break;
-//                        case PERIODIC:
-//                            if (isBalance(
-//                                    distanceClosest(preX.get(i), preY.get(i), preX.get(j), preY.get(i)),
-//                                    distanceClosest(newX.get(i), newY.get(i), newX.get(j), newY.get(j)),
-//                                    distanceClosest(preX.get(i), preY.get(i), preX.get(k), preY.get(k)),
-//                                    distanceClosest(newX.get(i), newY.get(i), newX.get(k), newY.get(k)),
-//                                    distanceClosest(preX.get(j), preY.get(j), preX.get(k), preY.get(k)),
-//                                    distanceClosest(newX.get(j), newY.get(j), newX.get(k), newY.get(k))
-//                            )) {
-//                                counts[0] += 1;
-//                            } else {
-//                                counts[1] += 1;
-//                            }
-//                            break;
-//                        default:
-//                            if (isBalance(
-//                                    distance(preX.get(i), preY.get(i), preX.get(j), preY.get(i)),
-//                                    distance(newX.get(i), newY.get(i), newX.get(j), newY.get(j)),
-//                                    distance(preX.get(i), preY.get(i), preX.get(k), preY.get(k)),
-//                                    distance(newX.get(i), newY.get(i), newX.get(k), newY.get(k)),
-//                                    distance(preX.get(j), preY.get(j), preX.get(k), preY.get(k)),
-//                                    distance(newX.get(j), newY.get(j), newX.get(k), newY.get(k))
-//                            )) {
-//                                counts[0] += 1;
-//                            } else {
-//                                counts[1] += 1;
-//                            }
-//                    }
-//                }
-//            }
-//        }
-//        return counts;
-//    }
-
+    public long[] nbal(double[] preX, double[] preY, double[] newX, double[] newY, Distance distance) {
+        return new TriadBalance(newX.length).count(preX, preY, newX, newY, distance);
+    }
 
     /**
      * > The function nbal counted the number of all triads that were balanced,
@@ -114,32 +57,27 @@ final class SocialMitosisMetrics implements Metrics {
      * 2.4 (http://jasss.soc.surrey.ac.uk/6/3/2.html)
      *
      * Usage:
-     *   Create new variables to store previous step position and in sps_p.Swarm::run().
-     *     List<Double> preX = new ArrayList<>(pNum);
-     *     List<Double> preY = new ArrayList<>(pNum);
-     *
-     *     for (sps_p.Particle p1 : particles) {
-     *       preX.add(p1.x);
-     *       preY.add(p1.y);
-     *       ....
-     *     }
+     *   Copy positions before a step.
+     *     double[] preX = store.x.clone();
+     *     double[] preY = store.y.clone();
+     *     engine.step();
      *
-     *     sps_p.metrics.addNbals(nbal(preX, preY, newX, newY));
+     *     metrics.addNbals(nbal(preX, preY, store.x, store.y, engine::distance));
      *
      * @param counts The first element means the number of balanced triads and
      *               the second one means the number of imbalanced triads.
      */
-    public void addNbals(int[] counts) {
+    public void addNbals(long[] counts) {
         nbals.add(counts);
     }
 
     public void printNbals() {
         System.out.println("===================== Balance ========================");
-        for (int[] nbal : nbals) {
+        for (long[] nbal : nbals) {
             System.out.println(nbal[0]);
         }
         System.out.println("===================== Imbalance ========================");
-        for (int[] nbal : nbals) {
+        for (long[] nbal : nbals) {
             System.out.println(nbal[1]);
         }
     }
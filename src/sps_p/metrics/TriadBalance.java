@@ -0,0 +1,252 @@
+package sps_p.metrics;
+
+import sps_p.utils.Combination;
+
+import java.util.stream.IntStream;
+
+/**
+ * Count balanced and imbalanced triads of particles, where particle i "likes" particle j when the distance between them
+ * didn't increase in a step. A triad is balanced when the product of the signs of its 3 relations is positive.
+ * <p>
+ * The relations of particle i are stored as a bitset whose bit k is set when i likes k. For a pair (i, j), the triads
+ * (i, j, k) are balanced when the relations i-k and j-k are the same and i likes j, or when they are different and i
+ * doesn't like j, so the triads of a pair are counted by XOR and popcount of 2 bitsets. This is O(N^3 / 64).
+ * <p>
+ * update() remembers the relations and only recounts triads which have a relation whose sign changed since the
+ * previous call.
+ */
+public class TriadBalance {
+    /**
+     * Recount all triads when more than this ratio of relations changed.
+     */
+    private static final double FULL_COUNT_RATIO = 0.25;
+
+    private final int num;
+    private final int words;
+
+    /**
+     * like[i * words + w] is the word w of the bitset of particle i.
+     */
+    private long[] like;
+    private long[] next;
+    private boolean initialized = false;
+
+    private long balanced;
+    private long triads;
+
+    /**
+     * The number of pairs whose relation changed in the last update().
+     */
+    private long changed;
+
+    public TriadBalance(int num) {
+        if (num < 3) {
+            throw new IllegalArgumentException("At least 3 particles are needed for a triad: " + num);
+        }
+        this.num = num;
+        this.words = (num + 63) >>> 6;
+        this.like = new long[num * words];
+        this.next = new long[num * words];
+        this.triads = (long) num * (num - 1) * (num - 2) / 6;
+    }
+
+    /**
+     * Count all triads from the relations in a step.
+     *
+     * @param preX     The positions x of particles before the step.
+     * @param preY     The positions y of particles before the step.
+     * @param newX     The positions x of particles after the step.
+     * @param newY     The positions y of particles after the step.
+     * @param distance The distance in the space where particles move.
+     * @return {The number of balanced triads, The number of imbalanced triads}.
+     */
+    public long[] count(double[] preX, double[] preY, double[] newX, double[] newY, Distance distance) {
+        relations(preX, preY, newX, newY, distance, like);
+        initialized = true;
+        changed = (long) num * (num - 1) / 2;
+        balanced = countAll();
+        return result();
+    }
+
+    /**
+     * Same as count(), but only triads which have a relation whose sign changed since the previous call are recounted.
+     * The first call counts all triads.
+     */
+    public long[] update(double[] preX, double[] preY, double[] newX, double[] newY, Distance distance) {
+        if (!initialized) {
+            return count(preX, preY, newX, newY, distance);
+        }
+        relations(preX, preY, newX, newY, distance, next);
+
+        changed = 0;
+        for (int i = 0; i < like.length; i++) {
+            changed += Long.bitCount(like[i] ^ next[i]);
+        }
+        changed /= 2;
+
+        if (changed > FULL_COUNT_RATIO * num * (num - 1) / 2) {
+            swap();
+            balanced = countAll();
+        } else {
+            long delta = countChanges();
+            swap();
+            balanced += delta;
+        }
+        return result();
+    }
+
+    /**
+     * @return The number of pairs whose relation changed in the last count() or update().
+     */
+    public long getChanged() {
+        return changed;
+    }
+
+    private long[] result() {
+        return new long[]{balanced, triads - balanced};
+    }
+
+    private void swap() {
+        long[] tmp = like;
+        like = next;
+        next = tmp;
+    }
+
+    /**
+     * Calculate the relation of all pairs. Particle i calculates pairs with k > i in its own bitset, so particles are
+     * calculated in parallel. Then the relations are copied to the bitsets of k.
+     */
+    private void relations(double[] preX, double[] preY, double[] newX, double[] newY, Distance distance, long[] out) {
+        if (preX.length != num || newX.length != num) {
+            throw new IllegalArgumentException("The number of positions must be " + num);
+        }
+        IntStream.range(0, num).parallel().forEach(i -> {
+            int base = i * words;
+            for (int w = 0; w < words; w++) {
+                out[base + w] = 0L;
+            }
+            for (int k = i + 1; k < num; k++) {
+                double preDis = distance.distance(preX[i], preY[i], preX[k], preY[k]);
+                double newDis = distance.distance(newX[i], newY[i], newX[k], newY[k]);
+                if (newDis <= preDis) {
+                    out[base + (k >>> 6)] |= 1L << k;
+                }
+            }
+        });
+        for (int i = 0; i < num; i++) {
+            int base = i * words;
+            for (int w = i >>> 6; w < words; w++) {
+                long bits = out[base + w] & above(i, w);
+                while (bits != 0) {
+                    int k = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    out[k * words + (i >>> 6)] |= 1L << i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Count balanced triads (i, j, k) such that i < j < k. Pairs (i, j) are divided by their ranks of nC2 and counted
+     * in parallel.
+     */
+    private long countAll() {
+        return new Combination(num, 2).parallelStream().mapToLong(p -> countAbove(p[0], p[1])).sum();
+    }
+
+    /**
+     * @return The number of balanced triads (i, j, k) such that j < k.
+     */
+    private long countAbove(int i, int j) {
+        int bi = i * words;
+        int bj = j * words;
+        boolean likeIJ = (like[bi + (j >>> 6)] & (1L << j)) != 0;
+        long count = 0;
+        for (int w = j >>> 6; w < words; w++) {
+            long same = ~(like[bi + w] ^ like[bj + w]);
+            long bits = likeIJ ? same : ~same;
+            count += Long.bitCount(bits & above(j, w));
+        }
+        return count;
+    }
+
+    /**
+     * Calculate the change of the number of balanced triads from |like| to |next|. Each triad which has changed
+     * relations is counted only at its smallest changed pair (i, j) in lexicographic order, that is, k is skipped when
+     * i-k is changed and k < j, or when j-k is changed and k < i. Its balance flips when an odd number of its
+     * relations changed.
+     */
+    private long countChanges() {
+        long delta = 0;
+        for (int i = 0; i < num; i++) {
+            int bi = i * words;
+            for (int w = i >>> 6; w < words; w++) {
+                long flippedI = (like[bi + w] ^ next[bi + w]) & above(i, w);
+                while (flippedI != 0) {
+                    int j = (w << 6) + Long.numberOfTrailingZeros(flippedI);
+                    flippedI &= flippedI - 1;
+                    delta += countChangesOfPair(i, j);
+                }
+            }
+        }
+        return delta;
+    }
+
+    private long countChangesOfPair(int i, int j) {
+        int bi = i * words;
+        int bj = j * words;
+        boolean likeIJ = (next[bi + (j >>> 6)] & (1L << j)) != 0;
+        long delta = 0;
+        for (int w = 0; w < words; w++) {
+            long flippedI = like[bi + w] ^ next[bi + w];
+            long flippedJ = like[bj + w] ^ next[bj + w];
+            long counted = (flippedI & below(j, w)) | (flippedJ & below(i, w));
+            long odd = ~(flippedI ^ flippedJ);
+            long mask = ~counted & odd & valid(w) & ~bit(i, w) & ~bit(j, w);
+
+            long same = ~(next[bi + w] ^ next[bj + w]);
+            long nowBalanced = likeIJ ? same : ~same;
+            delta += Long.bitCount(mask & nowBalanced) - Long.bitCount(mask & ~nowBalanced);
+        }
+        return delta;
+    }
+
+    /**
+     * @return The bits of the word w for particles k > j.
+     */
+    private long above(int j, int w) {
+        long mask;
+        if (w < j >>> 6) {
+            mask = 0L;
+        } else if (w > j >>> 6) {
+            mask = -1L;
+        } else {
+            mask = (j & 63) == 63 ? 0L : -1L << ((j & 63) + 1);
+        }
+        return mask & valid(w);
+    }
+
+    /**
+     * @return The bits of the word w for particles k < j.
+     */
+    private long below(int j, int w) {
+        if (w < j >>> 6) {
+            return -1L;
+        } else if (w > j >>> 6) {
+            return 0L;
+        }
+        return (1L << (j & 63)) - 1;
+    }
+
+    private long bit(int i, int w) {
+        return w == i >>> 6 ? 1L << i : 0L;
+    }
+
+    /**
+     * @return The bits of the word w for existing particles.
+     */
+    private long valid(int w) {
+        int rest = num - (w << 6);
+        return rest >= 64 ? -1L : (1L << rest) - 1;
+    }
+}
@@ -0,0 +1,86 @@
+package sps_p.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parse command line arguments like "--steps 1000 --headless".
+ * An option followed by a value is stored as a pair of a name and a value, and an option without a value is a flag.
+ */
+public class Arguments {
+    private static final String PREFIX = "--";
+    private Map<String, String> options = new HashMap<>();
+
+    public Arguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith(PREFIX)) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(PREFIX.length());
+            if (i + 1 < args.length && !args[i + 1].startsWith(PREFIX)) {
+                options.put(name, args[i + 1]);
+                i++;
+            } else {
+                options.put(name, "");
+            }
+        }
+    }
+
+    public boolean has(String name) {
+        return options.containsKey(name);
+    }
+
+    public String getString(String name, String def) {
+        return options.getOrDefault(name, def);
+    }
+
+    public int getInt(String name, int def) {
+        return has(name) ? Integer.parseInt(options.get(name)) : def;
+    }
+
+    public long getLong(String name, long def) {
+        return has(name) ? Long.parseLong(options.get(name)) : def;
+    }
+
+    public double getDouble(String name, double def) {
+        return has(name) ? Double.parseDouble(options.get(name)) : def;
+    }
+
+    /**
+     * Return comma separated values as an array.
+     * Ex. "--params 0.8,1.7,0.5,1.2" => {0.8, 1.7, 0.5, 1.2}
+     *
+     * @param name The name of an option.
+     * @return Parsed values, or null if the option doesn't exist.
+     */
+    public double[] getDoubles(String name) {
+        if (!has(name)) {
+            return null;
+        }
+        String[] values = options.get(name).split(",");
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = Double.parseDouble(values[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * Return comma separated integers as an array.
+     * Ex. "--types 0,1,1,0" => {0, 1, 1, 0}
+     *
+     * @param name The name of an option.
+     * @return Parsed values, or null if the option doesn't exist.
+     */
+    public int[] getInts(String name) {
+        if (!has(name)) {
+            return null;
+        }
+        String[] values = options.get(name).split(",");
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = Integer.parseInt(values[i].trim());
+        }
+        return result;
+    }
+}
@@ -1,70 +1,94 @@
 package sps_p.utils;
 
-import java.util.ArrayList;
-import java.util.List;
-
-
-public class Combination {
+/**
+ * All combinations of k numbers out of 0 ... n - 1 in lexicographic order.
+ * Ex. n=4, k=2 : {0, 1}, {0, 2}, {0, 3}, {1, 2}, {1, 3}, {2, 3}
+ * Combinations are not stored, so nC3 triangles of thousands of particles can be iterated.
+ */
+public class Combination extends RankedSequence {
     private int n, k;
-    private List<int[]> comb;
+    private long count;
 
     public Combination(int n, int k) {
-        if (n < k || n < 1) {
+        if (n < k || n < 1 || k < 1) {
             throw new IllegalArgumentException();
         }
         this.n = n;
         this.k = k;
-        comb = combination();
+        this.count = binomial(n, k);
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    /**
+     * The rank is nCk - 1 - Σ(k-1, i=0) (n-1-c[i])C(k-i), because the combinations after |c| are the combinations of
+     * {n-1-c[i]} in the reversed order.
+     *
+     * @param c A combination in ascending order.
+     * @return The index of |c|.
+     */
+    @Override
+    public long rank(int[] c) {
+        if (c.length != k) {
+            throw new IllegalArgumentException("The length must be " + k + ": " + c.length);
+        }
+        long after = 0;
+        for (int i = 0; i < k; i++) {
+            if (c[i] < 0 || c[i] >= n || (i > 0 && c[i] <= c[i - 1])) {
+                throw new IllegalArgumentException("Not a combination of " + n + " numbers in ascending order");
+            }
+            after += binomial(n - 1 - c[i], k - i);
+        }
+        return count - 1 - after;
     }
 
-    public int size() {
-        return comb.size();
+    @Override
+    int length() {
+        return k;
     }
 
-    public List<int[]> list() {
-        return comb;
+    @Override
+    int stateLength() {
+        return 0;
     }
 
-    public void print() {
-        for (int[] i : comb) {
-            for (int j = 0; j < k; j++) {
-                System.out.print(i[j] + ", ");
+    /**
+     * The reverse of rank(). Take the largest v such that vC(k-i) is not more than the rest for each position i.
+     */
+    @Override
+    void unrank(long rank, int[] c, int[] state) {
+        long after = count - 1 - rank;
+        int v = n;
+        for (int i = 0; i < k; i++) {
+            v--;
+            while (binomial(v, k - i) > after) {
+                v--;
             }
-            System.out.println(" ");
+            after -= binomial(v, k - i);
+            c[i] = n - 1 - v;
         }
-        System.out.println("size is " + size());
     }
 
     /**
-     * Reference: http://hmkcode.com/calculate-find-all-possible-combinations-of-an-array-using-java/
+     * Increase the rightmost number which can be increased and put the following numbers right after it.
      */
-    private List<int[]> combination() {
-        List<int[]> comb = new ArrayList<>();
-        int one[] = new int[k];
-        int r = 0;
-        int index = 0;
-
-        while (r >= 0) {
-            if (index <= (n + (r - k))) {
-                one[r] = index;
-
-                // If we are at the last position, add to the combination list and increase the index.
-                if (r == k - 1) {
-                    comb.add(one.clone());
-                    index++;
-                } else {
-                    index = one[r] + 1;
-                    r++;
-                }
-            } else {
-                r--;
-                if (r > 0)
-                    index = one[r] + 1;
-                else
-                    index = one[0] + 1;
-            }
+    @Override
+    boolean next(int[] c, int[] state) {
+        int i = k - 1;
+        while (i >= 0 && c[i] == n - k + i) {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        c[i]++;
+        for (int j = i + 1; j < k; j++) {
+            c[j] = c[j - 1] + 1;
         }
-        return comb;
+        return true;
     }
 
     /**
@@ -74,4 +98,4 @@ public class Combination {
         Combination c = new Combination(50, 3);
         c.print();
     }
-}
\ No newline at end of file
+}
@@ -1,41 +1,119 @@
 package sps_p.utils;
 
-import java.util.ArrayList;
-import java.util.List;
-
-public class Permutation {
+/**
+ * All permutations of 0 ... k - 1. n is only checked to be at least k.
+ * The order is the same as swapping position l with each of positions l ... k - 1 recursively.
+ * Ex. k=3 : {0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 1, 0}, {2, 0, 1}
+ * The element of rank r is made from digits d[l] = (r / (k-1-l)!) % (k-l) by swapping position l with l + d[l] in
+ * order from l = 0. Permutations are not stored.
+ */
+public class Permutation extends RankedSequence {
     private int n;
     private int k;
-    private List<int[]> perm = new ArrayList<>();
+    private long count;
 
     public Permutation(int n, int k) {
-        if (n < k || n < 1) {
+        if (n < k || n < 1 || k < 1) {
             throw new IllegalArgumentException();
         }
-
+        if (k > 20) {
+            throw new IllegalArgumentException("k! doesn't fit in long: " + k);
+        }
         this.n = n;
         this.k = k;
-        int[] origin = new int[k];
-        for (int i = 0; i < k; i++) origin[i] = i;
-        permutation(origin, 0, k - 1);
+        long count = 1;
+        for (int i = 2; i <= k; i++) {
+            count *= i;
+        }
+        this.count = count;
     }
 
-    public int size() {
-        return perm.size();
+    @Override
+    public long count() {
+        return count;
     }
 
-    public List<int[]> list() {
-        return perm;
+    /**
+     * Find the digits by repeating the swaps on 0 ... k - 1.
+     *
+     * @param p A permutation of 0 ... k - 1.
+     * @return The index of |p|.
+     */
+    @Override
+    public long rank(int[] p) {
+        if (p.length != k) {
+            throw new IllegalArgumentException("The length must be " + k + ": " + p.length);
+        }
+        int[] a = new int[k];
+        for (int i = 0; i < k; i++) a[i] = i;
+        long rank = 0;
+        for (int l = 0; l < k; l++) {
+            int i = l;
+            while (i < k && a[i] != p[l]) {
+                i++;
+            }
+            if (i == k) {
+                throw new IllegalArgumentException("Not a permutation of " + k + " numbers");
+            }
+            swap(a, l, i);
+            rank = rank * (k - l) + (i - l);
+        }
+        return rank;
     }
 
-    public void print() {
-        for (int[] i : perm) {
-            for (int j = 0; j < k; j++) {
-                System.out.print(i[j] + ", ");
-            }
-            System.out.println(" ");
+    @Override
+    int length() {
+        return k;
+    }
+
+    /**
+     * The state is the digits d[l].
+     */
+    @Override
+    int stateLength() {
+        return k;
+    }
+
+    @Override
+    void unrank(long rank, int[] p, int[] digits) {
+        for (int l = k - 1; l >= 0; l--) {
+            digits[l] = (int) (rank % (k - l));
+            rank /= k - l;
+        }
+        build(p, digits);
+    }
+
+    /**
+     * Increase the digits by one from the last position with carries. Only the swaps after the changed digit are
+     * undone and done again, so this takes O(1) on average.
+     */
+    @Override
+    boolean next(int[] p, int[] digits) {
+        int l = k - 1;
+        while (l >= 0 && digits[l] == k - 1 - l) {
+            l--;
+        }
+        if (l < 0) {
+            return false;
+        }
+        for (int m = k - 1; m >= l; m--) {
+            swap(p, m, m + digits[m]);
+        }
+        digits[l]++;
+        for (int m = l + 1; m < k; m++) {
+            digits[m] = 0;
+        }
+        for (int m = l; m < k; m++) {
+            swap(p, m, m + digits[m]);
+        }
+        return true;
+    }
+
+    private void build(int[] p, int[] digits) {
+        for (int i = 0; i < k; i++) p[i] = i;
+        for (int l = 0; l < k; l++) {
+            swap(p, l, l + digits[l]);
         }
-        System.out.println("size is " + size());
     }
 
     /**
@@ -44,33 +122,12 @@ public class Permutation {
      * @param a Int array.
      * @param i Position 1.
      * @param j Position 2.
-     * @return Swapped array.
      */
-    private int[] swap(int[] a, int i, int j) {
+    private void swap(int[] a, int i, int j) {
         int tmp;
         tmp = a[i];
         a[i] = a[j];
         a[j] = tmp;
-        return a;
-    }
-
-    /**
-     * This function directly changes the instance variable of |perm|.
-     *
-     * @param ans Original array to calculate permutation for.
-     * @param l Start index.
-     * @param r End index.
-     */
-    private void permutation(int[] ans, int l, int r) {
-        if (l == r)
-            perm.add(ans.clone());
-        else {
-            for (int i = l; i <= r; i++) {
-                ans = swap(ans, l, i);
-                permutation(ans, l + 1, r);
-                ans = swap(ans, l, i);
-            }
-        }
     }
 
     /**
@@ -0,0 +1,257 @@
+package sps_p.utils;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A sequence of int arrays which is not stored in memory. Each element has a rank, which is its index in the sequence,
+ * and it is calculated from the rank or from the previous element when it is needed.
+ * <p>
+ * Iterators and spliterators reuse one int array as a cursor and return the same array for all elements, so clone it
+ * if an element has to be kept. A range of ranks can be iterated by a worker without the elements before it.
+ */
+public abstract class RankedSequence implements Iterable<int[]> {
+    /**
+     * @return The number of elements.
+     */
+    public abstract long count();
+
+    /**
+     * @param element An element of this sequence.
+     * @return The index of |element| in this sequence.
+     */
+    public abstract long rank(int[] element);
+
+    /**
+     * @return The length of each element.
+     */
+    abstract int length();
+
+    /**
+     * @return The length of additional state which an iterator keeps with a cursor.
+     */
+    abstract int stateLength();
+
+    /**
+     * Write the element of |rank| into |cursor| and its state into |state|.
+     */
+    abstract void unrank(long rank, int[] cursor, int[] state);
+
+    /**
+     * Change |cursor| and |state| to the next element.
+     *
+     * @return False if |cursor| is the last element.
+     */
+    abstract boolean next(int[] cursor, int[] state);
+
+    /**
+     * @return The number of elements. This fails if it is more than Integer.MAX_VALUE.
+     */
+    public int size() {
+        return Math.toIntExact(count());
+    }
+
+    /**
+     * @param rank The index of an element.
+     * @return A new array of the element of |rank|.
+     */
+    public int[] unrank(long rank) {
+        checkRange(rank, rank + 1);
+        int[] element = new int[length()];
+        unrank(rank, element, new int[stateLength()]);
+        return element;
+    }
+
+    /**
+     * Return all elements as a list. The list doesn't hold elements, and get(i) returns a new array each time.
+     *
+     * @return The list of all elements.
+     */
+    public List<int[]> list() {
+        return new Elements();
+    }
+
+    @Override
+    public Iterator<int[]> iterator() {
+        return iterator(0, count());
+    }
+
+    /**
+     * @param from The first rank.
+     * @param to   The rank after the last one.
+     * @return An iterator over elements from |from| to |to|, which returns the same array for all elements.
+     */
+    public Iterator<int[]> iterator(long from, long to) {
+        checkRange(from, to);
+        return new Cursor(from, to);
+    }
+
+    @Override
+    public Spliterator<int[]> spliterator() {
+        return spliterator(0, count());
+    }
+
+    /**
+     * Return a spliterator which is divided at the middle rank, so a parallel stream can process each range without
+     * iterating elements of other ranges.
+     *
+     * @param from The first rank.
+     * @param to   The rank after the last one.
+     * @return A spliterator over elements from |from| to |to|, which passes the same array for all elements.
+     */
+    public Spliterator<int[]> spliterator(long from, long to) {
+        checkRange(from, to);
+        return new Cursor(from, to);
+    }
+
+    public Stream<int[]> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<int[]> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    public void print() {
+        for (int[] i : this) {
+            for (int j = 0; j < length(); j++) {
+                System.out.print(i[j] + ", ");
+            }
+            System.out.println(" ");
+        }
+        System.out.println("size is " + count());
+    }
+
+    /**
+     * Calculate nCk without overflow as long as the result fits in long.
+     *
+     * @return nCk, or 0 if k < 0 or n < k.
+     */
+    static long binomial(int n, int k) {
+        if (k < 0 || n < k) {
+            return 0;
+        }
+        k = Math.min(k, n - k);
+        long c = 1;
+        for (int i = 0; i < k; i++) {
+            // c * (n - i) is divisible by i + 1. Divide by their gcd first to delay overflow.
+            long g = gcd(c, i + 1);
+            c = Math.multiplyExact(c / g, (n - i) / ((i + 1) / g));
+        }
+        return c;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private void checkRange(long from, long to) {
+        if (from < 0 || to > count() || from > to) {
+            throw new IllegalArgumentException("Invalid range [" + from + ", " + to + ") for " + count() + " elements");
+        }
+    }
+
+    /**
+     * Iterate elements from |rank| to |end| by one cursor.
+     */
+    private class Cursor implements Iterator<int[]>, Spliterator<int[]> {
+        private long rank;
+        private long end;
+        private boolean started = false;
+        private int[] cursor = new int[length()];
+        private int[] state = new int[stateLength()];
+
+        Cursor(long from, long to) {
+            this.rank = from;
+            this.end = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return rank < end;
+        }
+
+        @Override
+        public int[] next() {
+            if (rank >= end) {
+                throw new NoSuchElementException();
+            }
+            if (started) {
+                RankedSequence.this.next(cursor, state);
+            } else {
+                unrank(rank, cursor, state);
+                started = true;
+            }
+            rank++;
+            return cursor;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super int[]> action) {
+            if (rank >= end) {
+                return false;
+            }
+            action.accept(next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super int[]> action) {
+            while (rank < end) {
+                action.accept(next());
+            }
+        }
+
+        /**
+         * Give the first half of remaining ranks to a new spliterator and keep the second half.
+         */
+        @Override
+        public Spliterator<int[]> trySplit() {
+            long mid = rank + (end - rank) / 2;
+            if (mid <= rank) {
+                return null;
+            }
+            Cursor prefix = new Cursor(rank, mid);
+            rank = mid;
+            started = false;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - rank;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    private class Elements extends AbstractList<int[]> implements RandomAccess {
+        @Override
+        public int[] get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return unrank(index);
+        }
+
+        @Override
+        public int size() {
+            return RankedSequence.this.size();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package sps_p.utils;
+
+/**
+ * The xoshiro256** generator by Blackman and Vigna. It is fast and small, and unlike Math.random() it is not shared
+ * by threads, so each run has its own generator without any lock. The same seed always gives the same numbers.
+ * <p>
+ * The state is 4 longs, which can be saved by getState() and restored by setState().
+ */
+public final class Xoshiro256 {
+    private long s0, s1, s2, s3;
+
+    /**
+     * @param seed Any value. The state is made from it by SplitMix64, so close seeds give unrelated numbers.
+     */
+    public Xoshiro256(long seed) {
+        long x = seed;
+        s0 = splitMix64(x += 0x9E3779B97F4A7C15L);
+        s1 = splitMix64(x += 0x9E3779B97F4A7C15L);
+        s2 = splitMix64(x += 0x9E3779B97F4A7C15L);
+        s3 = splitMix64(x + 0x9E3779B97F4A7C15L);
+    }
+
+    public long nextLong() {
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+
+    /**
+     * @return A uniform value in [0, 1) made from the upper 53 bits.
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @param bound The upper bound, which must be positive.
+     * @return A uniform value in [0, |bound|).
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive: " + bound);
+        }
+        // Multiply the upper 32 bits and reject the biased part (Lemire's method).
+        long m = (nextLong() >>> 32) * bound;
+        long low = m & 0xFFFFFFFFL;
+        if (low < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while (low < threshold) {
+                m = (nextLong() >>> 32) * bound;
+                low = m & 0xFFFFFFFFL;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    /**
+     * @return A copy of the state.
+     */
+    public long[] getState() {
+        return new long[]{s0, s1, s2, s3};
+    }
+
+    /**
+     * @param state A state returned by getState(). It must not be all zero.
+     */
+    public void setState(long[] state) {
+        if (state.length != 4) {
+            throw new IllegalArgumentException("The state needs 4 values: " + state.length);
+        }
+        if ((state[0] | state[1] | state[2] | state[3]) == 0) {
+            throw new IllegalArgumentException("The state must not be all zero");
+        }
+        s0 = state[0];
+        s1 = state[1];
+        s2 = state[2];
+        s3 = state[3];
+    }
+
+    private static long splitMix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static void main(String[] args) {
+        Xoshiro256 random = new Xoshiro256(42);
+        for (int i = 0; i < 5; i++) {
+            System.out.println(random.nextLong() + ", " + random.nextDouble() + ", " + random.nextInt(3));
+        }
+    }
+}
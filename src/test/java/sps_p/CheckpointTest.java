@@ -0,0 +1,131 @@
+package sps_p;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import sps_p.utils.Arguments;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A run which is stopped at a checkpoint and resumed must print the same CSV and save the same final checkpoint as a
+ * run without a stop.
+ */
+class CheckpointTest {
+    private static final String COMMON = "--num 40 --seed 12345 --interval 50 --checkpoint-interval 100";
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "--type 3",
+            "--boundary periodic",
+            "--integrator rk4",
+            "--integrator adaptive --dt 0.01",
+            "--triads",
+            "--reorder 7",
+            "--reorder 7 --boundary periodic --cutoff 3 --triads",
+    })
+    void resumeIsIdentical(String options) throws IOException {
+        Path whole = dir.resolve("whole.ckpt");
+        Path parts = dir.resolve("parts.ckpt");
+
+        String expected = runBatch(options + " --steps 600 --checkpoint " + whole);
+        String first = runBatch(options + " --steps 300 --checkpoint " + parts);
+        String second = runBatch(options + " --steps 600 --checkpoint " + parts + " --resume");
+
+        assertEquals(expected, first + second);
+        assertArrayEquals(Files.readAllBytes(whole), Files.readAllBytes(parts));
+    }
+
+    /**
+     * The window of the regime straddles the checkpoint at step 300, and the run settles before --steps. The last
+     * checkpoint is at the settled step, so resuming the finished run prints nothing more.
+     */
+    @Test
+    void resumeOfEarlyStopIsIdentical() throws IOException {
+        String options = "--early-stop --window 8 --steady 0.5";
+        Path whole = dir.resolve("whole.ckpt");
+        Path parts = dir.resolve("parts.ckpt");
+
+        String expected = runBatch(options + " --steps 2000 --checkpoint " + whole);
+        String first = runBatch(options + " --steps 300 --checkpoint " + parts);
+        String second = runBatch(options + " --steps 2000 --checkpoint " + parts + " --resume");
+
+        String[] lines = expected.split("\n");
+        int settledAt = Integer.parseInt(lines[lines.length - 1].split(",")[0]);
+        assertTrue(300 < settledAt && settledAt < 2000, "settled at " + settledAt);
+        assertEquals(expected, first + second);
+        assertArrayEquals(Files.readAllBytes(whole), Files.readAllBytes(parts));
+
+        SimulationEngine engine = Batch.createEngine(new Arguments(COMMON.split(" ")), 12345);
+        Checkpoint.restore(engine, whole);
+        assertEquals(settledAt, engine.getCount());
+        assertEquals("", runBatch(options + " --steps 2000 --checkpoint " + whole + " --resume"));
+    }
+
+    @Test
+    void rejectsBrokenFile() throws IOException {
+        Path path = dir.resolve("broken.ckpt");
+        SimulationEngine engine = new SimulationEngine(10, 2, 40, 1);
+        engine.run(10);
+        Checkpoint.save(engine, path);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+
+        assertThrows(IOException.class, () -> Checkpoint.restore(new SimulationEngine(10, 2, 40, 1), path));
+    }
+
+    @Test
+    void rejectsOtherVersion() throws IOException {
+        Path path = dir.resolve("version.ckpt");
+        Checkpoint.save(new SimulationEngine(10, 2, 40, 1), path);
+        byte[] bytes = Files.readAllBytes(path);
+        // The version is the int after the magic number.
+        bytes[7] = (byte) (Checkpoint.VERSION + 1);
+        Files.write(path, bytes);
+
+        assertThrows(IOException.class, () -> Checkpoint.restore(new SimulationEngine(10, 2, 40, 1), path));
+    }
+
+    @Test
+    void rejectsOtherNumberOfParticles() throws IOException {
+        Path path = dir.resolve("other.ckpt");
+        Checkpoint.save(new SimulationEngine(10, 2, 40, 1), path);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> Checkpoint.restore(new SimulationEngine(11, 2, 40, 1), path));
+    }
+
+    /**
+     * Run Batch with |options| and return what it printed to stdout. stderr is dropped.
+     */
+    static String runBatch(String options) throws IOException {
+        String[] args = (COMMON + " " + options).trim().split("\\s+");
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(bytes, true, "UTF-8"));
+            System.setErr(new PrintStream(new ByteArrayOutputStream(), true, "UTF-8"));
+            new Batch(new Arguments(args)).run();
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        return bytes.toString("UTF-8");
+    }
+}
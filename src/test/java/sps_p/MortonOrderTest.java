@@ -0,0 +1,136 @@
+package sps_p;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * MortonOrder must move every value of a particle together and keep ParticleStore.ids a permutation, so outputs in the
+ * order of ids don't change by sorting.
+ */
+class MortonOrderTest {
+    private static final int NUM = 500;
+
+    @Test
+    void interleaveBits() {
+        assertEquals(0, MortonOrder.interleave(0, 0));
+        assertEquals(1, MortonOrder.interleave(1, 0));
+        assertEquals(2, MortonOrder.interleave(0, 1));
+        assertEquals(4, MortonOrder.interleave(2, 0));
+        assertEquals(0x55555555, MortonOrder.interleave(0xFFFF, 0));
+        assertEquals(0xAAAAAAAA, MortonOrder.interleave(0, 0xFFFF));
+    }
+
+    @Test
+    void sortMovesParticlesWithTheirIds() {
+        for (Boundary boundary : Boundary.values()) {
+            SimulationEngine engine = newEngine(boundary);
+            ParticleStore store = engine.getStore();
+            int[] types = engine.getParameter().types;
+            double[] x = store.x.clone();
+            double[] y = store.y.clone();
+            double[] vx = store.vx.clone();
+            double[] vy = store.vy.clone();
+            int[] type = types.clone();
+
+            new MortonOrder().sort(store, types, boundary);
+
+            assertPermutation(store.ids);
+            assertEquals(1, store.sorts);
+            for (int s = 0; s < NUM; s++) {
+                int id = store.ids[s];
+                assertEquals(x[id], store.x[s]);
+                assertEquals(y[id], store.y[s]);
+                assertEquals(vx[id], store.vx[s]);
+                assertEquals(vy[id], store.vy[s]);
+                assertEquals(type[id], types[s]);
+            }
+        }
+    }
+
+    /**
+     * The sort is stable, so sorting particles which are already sorted doesn't move them.
+     */
+    @Test
+    void sortIsStable() {
+        for (Boundary boundary : Boundary.values()) {
+            SimulationEngine engine = newEngine(boundary);
+            ParticleStore store = engine.getStore();
+            MortonOrder morton = new MortonOrder();
+            morton.sort(store, engine.getParameter().types, boundary);
+            int[] ids = store.ids.clone();
+            morton.sort(store, engine.getParameter().types, boundary);
+            assertArrayEquals(ids, store.ids);
+        }
+    }
+
+    @Test
+    void sortByIdRestoresSlots() {
+        SimulationEngine engine = newEngine(Boundary.OPEN);
+        ParticleStore store = engine.getStore();
+        int[] types = engine.getParameter().types;
+        double[] x = store.x.clone();
+        int[] type = types.clone();
+        MortonOrder morton = new MortonOrder();
+        morton.sort(store, types, Boundary.OPEN);
+        morton.sortById(store, types);
+
+        for (int s = 0; s < NUM; s++) {
+            assertEquals(s, store.ids[s]);
+        }
+        assertArrayEquals(x, store.x);
+        assertArrayEquals(type, types);
+    }
+
+    /**
+     * A run which sorts particles every few steps calculates the same positions by id as one which doesn't, up to the
+     * rounding of sums in a different order.
+     */
+    @Test
+    void reorderedRunKeepsIds() {
+        SimulationEngine plain = newEngine(Boundary.PERIODIC);
+        SimulationEngine sorted = newEngine(Boundary.PERIODIC);
+        plain.setKernel(new CellListForceKernel(plain, 3));
+        sorted.setKernel(new CellListForceKernel(sorted, 3));
+        sorted.setReorderInterval(7);
+        double[] x = new double[NUM];
+        double[] y = new double[NUM];
+
+        for (int step = 0; step < 50; step++) {
+            plain.step();
+            sorted.step();
+            assertPermutation(sorted.getStore().ids);
+        }
+        assertTrue(sorted.getStore().sorts > 0);
+        sorted.getStore().copyById(sorted.getStore().x, x);
+        sorted.getStore().copyById(sorted.getStore().y, y);
+        assertArrayEquals(plain.getStore().x, x, 1e-9);
+        assertArrayEquals(plain.getStore().y, y, 1e-9);
+    }
+
+    /**
+     * Particles spread over the space with 3 types and random velocities, so each array has different values.
+     */
+    private static SimulationEngine newEngine(Boundary boundary) {
+        SimulationEngine engine = new SimulationEngine(NUM, 3, 5, 7);
+        engine.setBoundary(boundary);
+        ParticleStore store = engine.getStore();
+        for (int i = 0; i < NUM; i++) {
+            store.x[i] = engine.getRandom().nextDouble() * SimulationEngine.CYCLE_L;
+            store.y[i] = engine.getRandom().nextDouble() * SimulationEngine.CYCLE_L;
+            store.vx[i] = engine.getRandom().nextDouble();
+            store.vy[i] = engine.getRandom().nextDouble();
+        }
+        return engine;
+    }
+
+    private static void assertPermutation(int[] ids) {
+        boolean[] seen = new boolean[ids.length];
+        for (int id : ids) {
+            assertTrue(0 <= id && id < ids.length && !seen[id], "id " + id + " is out of range or repeated");
+            seen[id] = true;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package sps_p.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Compare TriadBalance with a brute-force count over all triads, for both count() and the incremental update().
+ */
+class TriadBalanceTest {
+    private static final double L = 10.0;
+
+    private static final Distance OPEN = (x1, y1, x2, y2) -> Math.hypot(x2 - x1, y2 - y1);
+
+    private static final Distance PERIODIC = (x1, y1, x2, y2) -> {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        dx -= L * Math.rint(dx / L);
+        dy -= L * Math.rint(dy / L);
+        return Math.hypot(dx, dy);
+    };
+
+    /**
+     * The numbers of particles around the sizes of words of the bitsets.
+     */
+    private static final int[] NUMS = {3, 4, 7, 63, 64, 65, 128, 130};
+
+    @Test
+    void countMatchesBruteForce() {
+        Random random = new Random(1);
+        for (Distance distance : new Distance[]{OPEN, PERIODIC}) {
+            for (int num : NUMS) {
+                TriadBalance balance = new TriadBalance(num);
+                for (int sample = 0; sample < 10; sample++) {
+                    double[][] pre = positions(random, num);
+                    double[][] next = move(random, pre, 1.0, 1.0);
+                    assertArrayEquals(bruteForce(pre, next, distance),
+                            balance.count(pre[0], pre[1], next[0], next[1], distance),
+                            "num " + num + ", sample " + sample);
+                }
+            }
+        }
+    }
+
+    /**
+     * Steps which change a few relations are counted incrementally, and ones which change many are counted again.
+     * Both must stay the same as the brute-force count over a sequence of steps.
+     */
+    @Test
+    void updateMatchesBruteForce() {
+        Random random = new Random(2);
+        for (Distance distance : new Distance[]{OPEN, PERIODIC}) {
+            for (int num : NUMS) {
+                TriadBalance balance = new TriadBalance(num);
+                double[][] pre = positions(random, num);
+                double[][] next = move(random, pre, 1.0, 1.0);
+                for (int step = 0; step < 20; step++) {
+                    assertArrayEquals(bruteForce(pre, next, distance),
+                            balance.update(pre[0], pre[1], next[0], next[1], distance),
+                            "num " + num + ", step " + step);
+                    // Move a few particles most of the time, so only their relations change.
+                    double ratio = step % 5 == 4 ? 1.0 : 0.05;
+                    pre = next;
+                    next = move(random, pre, ratio, 0.5);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsFewerThan3Particles() {
+        assertThrows(IllegalArgumentException.class, () -> new TriadBalance(2));
+    }
+
+    private static double[][] positions(Random random, int num) {
+        double[][] positions = new double[2][num];
+        for (int i = 0; i < num; i++) {
+            positions[0][i] = random.nextDouble() * L;
+            positions[1][i] = random.nextDouble() * L;
+        }
+        return positions;
+    }
+
+    /**
+     * @param ratio The ratio of particles which move.
+     * @param size  The largest move on each axis.
+     */
+    private static double[][] move(Random random, double[][] positions, double ratio, double size) {
+        int num = positions[0].length;
+        double[][] moved = new double[2][num];
+        for (int i = 0; i < num; i++) {
+            moved[0][i] = positions[0][i];
+            moved[1][i] = positions[1][i];
+            if (random.nextDouble() < ratio) {
+                moved[0][i] += (random.nextDouble() - 0.5) * 2 * size;
+                moved[1][i] += (random.nextDouble() - 0.5) * 2 * size;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Count balanced triads by the definition, O(N^3).
+     */
+    private static long[] bruteForce(double[][] pre, double[][] next, Distance distance) {
+        int num = pre[0].length;
+        boolean[][] like = new boolean[num][num];
+        for (int i = 0; i < num; i++) {
+            for (int j = 0; j < num; j++) {
+                if (i != j) {
+                    like[i][j] = distance.distance(next[0][i], next[1][i], next[0][j], next[1][j])
+                            <= distance.distance(pre[0][i], pre[1][i], pre[0][j], pre[1][j]);
+                }
+            }
+        }
+        long balanced = 0;
+        long imbalanced = 0;
+        for (int i = 0; i < num; i++) {
+            for (int j = i + 1; j < num; j++) {
+                for (int k = j + 1; k < num; k++) {
+                    int negatives = (like[i][j] ? 0 : 1) + (like[j][k] ? 0 : 1) + (like[i][k] ? 0 : 1);
+                    if (negatives % 2 == 0) {
+                        balanced++;
+                    } else {
+                        imbalanced++;
+                    }
+                }
+            }
+        }
+        return new long[]{balanced, imbalanced};
+    }
+}
@@ -0,0 +1,166 @@
+package sps_p;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Calculate all pairs by the Vector API in single precision, which has twice as many lanes as VectorForceKernel.
+ * Particles are sorted into tiles of types in the same way, and positions are copied into float arrays relative to the
+ * center of the swarm as in FloatForceKernel.
+ * <p>
+ * Vectors of float can't hold long sums, so the sums are moved into double accumulators often:
+ * the sum of a row i is reduced into double every BLOCK particles j, and the sums of (dot)rj are kept in float arrays
+ * which are added into double arrays every FLUSH_ROWS rows. Each float sum has at most about 64 terms, so the error
+ * doesn't grow with N, as in FloatForceKernel.
+ */
+class FloatVectorForceKernel extends VectorForceKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final float L = SimulationEngine.CYCLE_L;
+    private static final float HALF_L = L / 2;
+
+    /**
+     * The number of particles j whose contributions to a row are summed in float.
+     */
+    private static final int BLOCK = 64 * SPECIES.length();
+
+    /**
+     * The number of rows whose contributions to (dot)rj are summed in float.
+     */
+    private static final int FLUSH_ROWS = 64;
+
+    private float[] xf, yf, afx, afy;
+
+    FloatVectorForceKernel(SimulationEngine engine) {
+        super(engine);
+    }
+
+    @Override
+    void compute(double[] x, double[] y, double[] fx, double[] fy) {
+        Parameter parameter = engine.getParameter();
+        double[] k = parameter.flatParams;
+        int pType = parameter.pType;
+        boolean periodic = engine.getBoundary() == Boundary.PERIODIC;
+        float eps2 = (float) (engine.getSoftening() * engine.getSoftening());
+        int n = x.length;
+        sort(parameter.types, pType, n);
+        if (xf == null || xf.length != n) {
+            xf = new float[n];
+            yf = new float[n];
+            afx = new float[n];
+            afy = new float[n];
+        }
+
+        double cx = FloatForceKernel.center(x);
+        double cy = FloatForceKernel.center(y);
+        for (int s = 0; s < n; s++) {
+            xf[s] = (float) (x[order[s]] - cx);
+            yf[s] = (float) (y[order[s]] - cy);
+            sfx[s] = 0.0;
+            sfy[s] = 0.0;
+            afx[s] = 0.0f;
+            afy[s] = 0.0f;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int ti = sortedTypes[i];
+            for (int t = ti; t < pType; t++) {
+                float kij = (float) k[ti * pType + t];
+                float kji = (float) k[t * pType + ti];
+                int end = tileStart[t + 1];
+                for (int from = Math.max(i + 1, tileStart[t]); from < end; from += BLOCK) {
+                    accumulateTile(i, from, Math.min(from + BLOCK, end), kij, kji, periodic, eps2);
+                }
+            }
+            if ((i + 1) % FLUSH_ROWS == 0 || i == n - 1) {
+                flush(i + 1 - FLUSH_ROWS, n);
+            }
+        }
+
+        for (int s = 0; s < n; s++) {
+            fx[order[s]] = sfx[s];
+            fy[order[s]] = sfy[s];
+        }
+    }
+
+    /**
+     * Add the contributions of pairs (i, j) such that from <= j < end, where kij and kji are the same for all j.
+     * The sum of the row is added into the double accumulator of i, and the contributions to j into the float ones.
+     */
+    private void accumulateTile(int i, int from, int end, float kij, float kji, boolean periodic,
+                                float eps2) {
+        float[] xf = this.xf;
+        float[] yf = this.yf;
+        float[] afx = this.afx;
+        float[] afy = this.afy;
+        float xi = xf[i];
+        float yi = yf[i];
+        FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+        FloatVector sumX = FloatVector.zero(SPECIES);
+        FloatVector sumY = FloatVector.zero(SPECIES);
+
+        int j = from;
+        for (int bound = from + SPECIES.loopBound(end - from); j < bound; j += SPECIES.length()) {
+            FloatVector dx = FloatVector.fromArray(SPECIES, xf, j).sub(xi);
+            FloatVector dy = FloatVector.fromArray(SPECIES, yf, j).sub(yi);
+            if (periodic) {
+                dx = minimumImage(dx);
+                dy = minimumImage(dy);
+            }
+            FloatVector inv = one.div(dx.mul(dx).add(dy.mul(dy)).add(eps2).sqrt()); // |Rij|^(-1).
+            FloatVector rep = inv.mul(inv); // |Rij|^(-2).
+            FloatVector fij = inv.mul(kij).sub(rep).mul(inv);
+            FloatVector fji = inv.mul(kji).sub(rep).mul(inv);
+            sumX = sumX.add(fij.mul(dx));
+            sumY = sumY.add(fij.mul(dy));
+            FloatVector.fromArray(SPECIES, afx, j).sub(fji.mul(dx)).intoArray(afx, j);
+            FloatVector.fromArray(SPECIES, afy, j).sub(fji.mul(dy)).intoArray(afy, j);
+        }
+        double restX = sumX.reduceLanes(VectorOperators.ADD);
+        double restY = sumY.reduceLanes(VectorOperators.ADD);
+
+        // The rest of the tile which doesn't fill a vector.
+        for (; j < end; j++) {
+            float dx = xf[j] - xi;
+            float dy = yf[j] - yi;
+            if (periodic) {
+                dx = minimumImage(dx);
+                dy = minimumImage(dy);
+            }
+            float inv = 1.0f / (float) Math.sqrt(dx * dx + dy * dy + eps2);
+            float rep = inv * inv;
+            float fij = (kij * inv - rep) * inv;
+            float fji = (kji * inv - rep) * inv;
+            restX += fij * dx;
+            restY += fij * dy;
+            afx[j] -= fji * dx;
+            afy[j] -= fji * dy;
+        }
+        sfx[i] += restX;
+        sfy[i] += restY;
+    }
+
+    /**
+     * Move the float sums of particles from |from| to |n| into the double accumulators. Rows before |from| don't
+     * write particles before |from|, so the others are already zero.
+     */
+    private void flush(int from, int n) {
+        for (int s = Math.max(0, from); s < n; s++) {
+            sfx[s] += afx[s];
+            sfy[s] += afy[s];
+            afx[s] = 0.0f;
+            afy[s] = 0.0f;
+        }
+    }
+
+    private static FloatVector minimumImage(FloatVector d) {
+        d = d.sub(L, d.compare(VectorOperators.GT, HALF_L));
+        return d.add(L, d.compare(VectorOperators.LT, -HALF_L));
+    }
+
+    private static float minimumImage(float d) {
+        if (d > HALF_L) return d - L;
+        if (d < -HALF_L) return d + L;
+        return d;
+    }
+}
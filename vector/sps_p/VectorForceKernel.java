@@ -0,0 +1,172 @@
+package sps_p;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * Calculate all pairs by the Vector API, which calculates several particles j in the lanes of one vector.
+ * Particles are copied in the order of types first, so the particles j of a row i are tiles of the same type, and kij
+ * and kji are constant in each tile. They are broadcast to all lanes, so no gather is needed.
+ * Like accumulateRows(), each pair is visited only once, and (dot)rj of the tile is updated by a contiguous load and
+ * store.
+ * <p>
+ * This needs Java 16 or later with "--add-modules jdk.incubator.vector", so this file is compiled only by the "vector"
+ * profile. Batch.createVectorKernel() falls back to SerialForceKernel when this class can't be loaded.
+ * FloatVectorForceKernel calculates in float on the same tiles.
+ * <p>
+ * The minimum image in a periodic boundary is calculated by comparisons instead of rounding, which is the same as
+ * Boundary.minimumImage() while positions are within one period from each other, as they are after imaging.
+ */
+class VectorForceKernel extends ForceKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final double L = SimulationEngine.CYCLE_L;
+    private static final double HALF_L = L / 2;
+
+    /**
+     * order[s] is the index of the particle at the sorted position s.
+     */
+    int[] order;
+    int[] sortedTypes;
+
+    /**
+     * Particles of type t are between tileStart[t] and tileStart[t + 1] in the sorted order.
+     */
+    int[] tileStart;
+
+    /**
+     * Positions and (dot)ri in the sorted order.
+     */
+    double[] xs, ys, sfx, sfy;
+
+    VectorForceKernel(SimulationEngine engine) {
+        super(engine);
+    }
+
+    @Override
+    void compute(double[] x, double[] y, double[] fx, double[] fy) {
+        Parameter parameter = engine.getParameter();
+        double[] k = parameter.flatParams;
+        int pType = parameter.pType;
+        boolean periodic = engine.getBoundary() == Boundary.PERIODIC;
+        double eps2 = engine.getSoftening() * engine.getSoftening();
+        int n = x.length;
+        sort(parameter.types, pType, n);
+
+        for (int s = 0; s < n; s++) {
+            xs[s] = x[order[s]];
+            ys[s] = y[order[s]];
+            sfx[s] = 0.0;
+            sfy[s] = 0.0;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int ti = sortedTypes[i];
+            // Particles j > i are in the tile of ti and the tiles after it.
+            for (int t = ti; t < pType; t++) {
+                int from = Math.max(i + 1, tileStart[t]);
+                if (from < tileStart[t + 1]) {
+                    accumulateTile(i, from, tileStart[t + 1], k[ti * pType + t], k[t * pType + ti], periodic, eps2);
+                }
+            }
+        }
+
+        for (int s = 0; s < n; s++) {
+            fx[order[s]] = sfx[s];
+            fy[order[s]] = sfy[s];
+        }
+    }
+
+    /**
+     * Add the contributions of pairs (i, j) such that from <= j < end, where kij and kji are the same for all j.
+     */
+    private void accumulateTile(int i, int from, int end, double kij, double kji, boolean periodic,
+                                double eps2) {
+        double[] xs = this.xs;
+        double[] ys = this.ys;
+        double[] sfx = this.sfx;
+        double[] sfy = this.sfy;
+        double xi = xs[i];
+        double yi = ys[i];
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+        DoubleVector sumX = DoubleVector.zero(SPECIES);
+        DoubleVector sumY = DoubleVector.zero(SPECIES);
+
+        int j = from;
+        for (int bound = from + SPECIES.loopBound(end - from); j < bound; j += SPECIES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, xs, j).sub(xi);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, ys, j).sub(yi);
+            if (periodic) {
+                dx = minimumImage(dx);
+                dy = minimumImage(dy);
+            }
+            DoubleVector inv = one.div(dx.mul(dx).add(dy.mul(dy)).add(eps2).sqrt()); // |Rij|^(-1).
+            DoubleVector rep = inv.mul(inv); // |Rij|^(-2).
+            DoubleVector fij = inv.mul(kij).sub(rep).mul(inv);
+            DoubleVector fji = inv.mul(kji).sub(rep).mul(inv);
+            sumX = sumX.add(fij.mul(dx));
+            sumY = sumY.add(fij.mul(dy));
+            DoubleVector.fromArray(SPECIES, sfx, j).sub(fji.mul(dx)).intoArray(sfx, j);
+            DoubleVector.fromArray(SPECIES, sfy, j).sub(fji.mul(dy)).intoArray(sfy, j);
+        }
+        double restX = sumX.reduceLanes(VectorOperators.ADD);
+        double restY = sumY.reduceLanes(VectorOperators.ADD);
+
+        // The rest of the tile which doesn't fill a vector.
+        for (; j < end; j++) {
+            double dx = xs[j] - xi;
+            double dy = ys[j] - yi;
+            if (periodic) {
+                dx = Boundary.minimumImage(dx);
+                dy = Boundary.minimumImage(dy);
+            }
+            double inv = 1.0 / Math.sqrt(dx * dx + dy * dy + eps2);
+            double rep = inv * inv;
+            double fij = (kij * inv - rep) * inv;
+            double fji = (kji * inv - rep) * inv;
+            restX += fij * dx;
+            restY += fij * dy;
+            sfx[j] -= fji * dx;
+            sfy[j] -= fji * dy;
+        }
+        sfx[i] += restX;
+        sfy[i] += restY;
+    }
+
+    /**
+     * Sort particles by types with counting sort. Particles of the same type keep their order.
+     */
+    void sort(int[] types, int pType, int n) {
+        if (order == null || order.length != n || tileStart.length != pType + 1) {
+            order = new int[n];
+            sortedTypes = new int[n];
+            tileStart = new int[pType + 1];
+            xs = new double[n];
+            ys = new double[n];
+            sfx = new double[n];
+            sfy = new double[n];
+        }
+        Arrays.fill(tileStart, 0);
+        for (int i = 0; i < n; i++) {
+            tileStart[types[i] + 1]++;
+        }
+        for (int t = 0; t < pType; t++) {
+            tileStart[t + 1] += tileStart[t];
+        }
+        // Use the end of each tile as a cursor, then move it back to the start.
+        for (int i = n - 1; i >= 0; i--) {
+            int s = --tileStart[types[i] + 1];
+            order[s] = i;
+            sortedTypes[s] = types[i];
+        }
+        System.arraycopy(tileStart, 1, tileStart, 0, pType);
+        tileStart[pType] = n;
+    }
+
+    private static DoubleVector minimumImage(DoubleVector d) {
+        d = d.sub(L, d.compare(VectorOperators.GT, HALF_L));
+        return d.add(L, d.compare(VectorOperators.LT, -HALF_L));
+    }
+}